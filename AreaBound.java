@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class {@code AreaBound} gives a cheap lower bound of the area of each circuit for an
+ * architecture, without mapping the circuit.
+ * <p>
+ * Whatever the mapping is, every logical RAM is implemented by one of the types, so the final LUT
+ * requirement is at least
+ * <ul>
+ * <li>the basic LUT plus, for every ram, the least additional LUT among the types;</li>
+ * <li>the least LUT count whose physical RAMs can hold, for every ram, the least bits among the
+ * types (blocks used times the size of the type).</li>
+ * </ul>
+ * The total area never decreases with the LUT requirement, so the area of the larger bound is a
+ * lower bound of the area of the circuit.
+ */
+public class AreaBound {
+
+    protected int circuitNum;
+    protected int[] basicLUT;
+    protected LogicalRAM[][] shapeRAM; // one ram of each shape in the circuit
+    protected int[][] shapeCount;      // number of ram of each shape in the circuit
+
+    /**
+     * Generate the bound of the given benchmark
+     * @param ramRecordsList the LogicalRAM list of each circuit
+     * @param logicBlockCount the logic block count of each circuit
+     */
+    public AreaBound(List<LogicalRAM>[] ramRecordsList, int[] logicBlockCount){
+        this.circuitNum = ramRecordsList.length;
+        this.basicLUT = new int[circuitNum];
+        this.shapeRAM = new LogicalRAM[circuitNum][];
+        this.shapeCount = new int[circuitNum][];
+        for (int i = 0; i < circuitNum; i++) {
+            basicLUT[i] = logicBlockCount[i] * MemoryCAD.LOGICBLOCKLUT;
+            // Count the rams of each shape, the shape ids are dense so a direct table is enough
+            int[] countOf = new int[64];
+            ArrayList<LogicalRAM> rams = new ArrayList<>();
+            for (LogicalRAM ram : ramRecordsList[i]) {
+                if (ram.shape >= countOf.length) {
+                    countOf = Arrays.copyOf(countOf, Math.max(ram.shape + 1, countOf.length * 2));
+                }
+                if (countOf[ram.shape]++ == 0) rams.add(ram);
+            }
+            shapeRAM[i] = rams.toArray(new LogicalRAM[0]);
+            shapeCount[i] = new int[shapeRAM[i].length];
+            for (int s = 0; s < shapeRAM[i].length; s++) {
+                shapeCount[i][s] = countOf[shapeRAM[i][s].shape];
+            }
+        }
+    }
+
+    /**
+     * Get the number of circuit
+     * @return number of circuit
+     */
+    public int getCircuitNum(){
+        return circuitNum;
+    }
+
+    /**
+     * Calculate the lower bound of the LUT requirement of a circuit
+     * @param circuit id of the circuit
+     * @param types the RAM types of the architecture
+     * @return the lower bound, at most {@link Integer#MAX_VALUE}
+     */
+    public int getLUTBound(int circuit, RAMType[] types){
+        long lut = 0;
+        long bits = 0;
+        for (int s = 0; s < shapeRAM[circuit].length; s++) {
+            LogicalRAM ram = shapeRAM[circuit][s];
+            long minLUT = Long.MAX_VALUE;
+            long minBits = Long.MAX_VALUE;
+            for (RAMType type : types) {
+                minLUT = Math.min(minLUT, ram.peekLUT(type));
+                minBits = Math.min(minBits, (long) ram.peekSize(type) * type.getSize());
+            }
+            lut += minLUT * shapeCount[circuit][s];
+            bits += minBits * shapeCount[circuit][s];
+        }
+        long bound = Math.max(basicLUT[circuit] + lut, capacityLUT(bits, types));
+        return (int) Math.min(bound, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Calculate the lower bound of the area of a circuit
+     * @param circuit id of the circuit
+     * @param resource an organizer of the RAM types of the architecture, it is reset by this method
+     * @return the lower bound
+     */
+    public long getAreaBound(int circuit, ResourceOrganizer resource){
+        resource.reset(getLUTBound(circuit, resource.getTypes()));
+        return resource.getTotalArea();
+    }
+
+    /**
+     * Find the least LUT count L with sum(floor(L / ratio) * size) >= bits
+     */
+    private static long capacityLUT(long bits, RAMType[] types){
+        if (bits == 0) return 0;
+        long low = 0, high = 1;
+        while (capacity(high, types) < bits) {
+            low = high;
+            high *= 2;
+            if (high > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+        }
+        while (high - low > 1) { // capacity(low) < bits <= capacity(high)
+            long mid = (low + high) >>> 1;
+            if (capacity(mid, types) < bits) low = mid;
+            else high = mid;
+        }
+        return high;
+    }
+
+    private static long capacity(long lut, RAMType[] types){
+        long bits = 0;
+        for (RAMType type : types) {
+            bits += lut / type.getLutRatio() * type.getSize();
+        }
+        return bits;
+    }
+}
@@ -3,12 +3,24 @@ public class BRAM extends RAMType {
     protected int size;
     protected int maxWidth;
     protected int lutRatio;
+    protected long tileArea;
 
     public BRAM(int id, int size, int maxWidth, int lutRatio){
         this.id = id;
         this.size = size;
         this.maxWidth = maxWidth;
         this.lutRatio = lutRatio;
+        this.tileArea = 9000 + 5L * size + 90L * ceilSqrt(size) + 600L * 2 * maxWidth;
+    }
+
+    /**
+     * Calculate ceil(sqrt(x)) with integer arithmetic
+     */
+    private static long ceilSqrt(int x){
+        long root = (long) Math.sqrt(x);
+        while (root * root > x) root--;
+        while (root * root < x) root++;
+        return root;
     }
 
     @Override
@@ -40,5 +52,10 @@ public class BRAM extends RAMType {
     public int getLutImpl() {
         return 0;
     }
+
+    @Override
+    public long getTileArea() {
+        return tileArea;
+    }
     
 }
@@ -0,0 +1,189 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class {@code BatchEvaluator} evaluates the architectures listed in a description file against
+ * the benchmark, which is loaded once, in a single JVM.
+ * <p>
+ * Each line of the file is an architecture, its RAM types are separated by {@code ;} and given
+ * with the arguments of the constructors:
+ * <pre>
+ * # LUTRAM id size minWidth maxWidth lutRatio; BRAM id size maxWidth lutRatio
+ * LUTRAM 1 640 10 20 20; BRAM 2 8192 32 100; BRAM 3 131072 128 3000
+ * </pre>
+ * The LUT ratio is in LUTs, as in {@link MemoryCAD#getTypeSet()}. Empty lines and the text after
+ * {@code #} are ignored.
+ */
+public class BatchEvaluator {
+
+    public static void main(String[] args){
+        try {
+            int threads;
+            List<String> positional = SweepEngine.positionalArgs(args);
+            try {
+                threads = SweepEngine.parseThreads(args);
+            } catch (NumberFormatException e){
+                System.err.println("The thread count must be a positive integer!");
+                return;
+            }
+            if (positional.isEmpty()) {
+                System.err.println("Usage: java BatchEvaluator <architecture file> [--threads t] [--cache [file]]");
+                return;
+            }
+            List<List<RAMType>> points = new ArrayList<>();
+            List<Integer> lines = new ArrayList<>();
+            try {
+                parseArchitectures(new File(positional.get(0)), points, lines);
+            } catch (RuntimeException re) {
+                System.err.println(re.getMessage());
+                return;
+            }
+
+            RunReport report = new RunReport("BatchEvaluator");
+            Benchmark benchmark = Benchmark.load();
+            System.out.println(benchmark.getLoadReport());
+            report.putBenchmark(benchmark);
+            report.put("architectureFile", positional.get(0));
+
+            // Map file name
+            SimpleDateFormat format = new SimpleDateFormat("yy_MM_dd_HH_mm_ss");
+            String timestamp = format.format(new Date());
+            // Make an output dir with timestamp
+            File dir = new File("output_batch");
+            if (!dir.isDirectory()) {
+                dir.mkdir();
+            }
+            dir = new File(dir, timestamp);
+            dir.mkdir();
+
+            // Start the execution
+            SweepEngine engine = new SweepEngine(benchmark.getRAMRecords(), benchmark.getLogicBlockCount(), threads);
+            engine.setCache(SweepEngine.openCache(args, benchmark));
+            long sweepStart = System.nanoTime();
+            double[] scores = engine.evaluate(points);
+            report.putSweep(engine, points.size(), System.nanoTime() - sweepStart);
+            int best = engine.findBest(scores);
+            engine.shutdown();
+
+            PrintWriter writer = new PrintWriter(new File(dir, "batch_result.txt"));
+            writer.println("Line, architecture, average area");
+            for (int p = 0; p < points.size(); p++) {
+                String architecture = describe(points.get(p));
+                writer.println(lines.get(p) + ", " + architecture + ", " + scores[p]);
+                Map<String, Object> entry = RunReport.entry();
+                entry.put("line", lines.get(p));
+                entry.put("architecture", architecture);
+                entry.put("area", scores[p]);
+                report.list("architectures").add(entry);
+            }
+            writer.close();
+            if (best >= 0) {
+                System.out.println("Best: line " + lines.get(best) + ", " + describe(points.get(best)) + ", average area " + scores[best]);
+                report.put("bestLine", lines.get(best));
+            }
+            System.out.println("Evaluated " + points.size() + " architectures");
+            report.write(new File(dir, RunReport.FILE_NAME));
+        }catch (IOException ioe){
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Read the architectures of a description file
+     * @param file the description file
+     * @param points the RAM type set of each architecture is added to this list
+     * @param lines the line number of each architecture is added to this list
+     * @throws IOException if the file cannot be read
+     * @throws RuntimeException if a line is not a valid architecture
+     */
+    public static void parseArchitectures(File file, List<List<RAMType>> points, List<Integer> lines) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNum = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) line = line.substring(0, comment);
+                if (line.trim().isEmpty()) continue;
+                List<RAMType> ramTypes;
+                try {
+                    ramTypes = parseArchitecture(line);
+                } catch (RuntimeException re) {
+                    throw new RuntimeException(file + " line " + lineNum + ": " + re.getMessage());
+                }
+                points.add(ramTypes);
+                lines.add(lineNum);
+            }
+        }
+    }
+
+    /**
+     * Generate the RAM types of an architecture from its description, in the form of a line of the
+     * description file without comment
+     * @param line the description
+     * @return the RAM types, in the order of the description
+     * @throws RuntimeException if the description is not a valid architecture
+     */
+    public static List<RAMType> parseArchitecture(String line){
+        List<RAMType> ramTypes = new ArrayList<>();
+        for (String type : line.split(";")) {
+            if (type.trim().isEmpty()) continue;
+            ramTypes.add(parseType(type.trim().split("\\s+")));
+        }
+        if (ramTypes.isEmpty()) throw new RuntimeException("no RAM type is given");
+        return ramTypes;
+    }
+
+    /**
+     * Generate a RAM type from the tokens of its description
+     */
+    private static RAMType parseType(String[] token){
+        int[] value = new int[token.length - 1];
+        try {
+            for (int i = 0; i < value.length; i++) {
+                value[i] = Integer.parseInt(token[i + 1]);
+                if (value[i] <= 0) throw new RuntimeException("the parameters must be positive: " + String.join(" ", token));
+            }
+        } catch (NumberFormatException nfe) {
+            throw new RuntimeException("the parameters must be integers: " + String.join(" ", token));
+        }
+        if (token[0].equalsIgnoreCase("LUTRAM")) {
+            if (value.length != 5) throw new RuntimeException("LUTRAM takes id, size, minWidth, maxWidth and lutRatio");
+            if (value[2] > value[3]) throw new RuntimeException("the minWidth of a LUTRAM is larger than the maxWidth");
+            return new LUTRAM(value[0], value[1], value[2], value[3], value[4]);
+        }
+        if (token[0].equalsIgnoreCase("BRAM")) {
+            if (value.length != 4) throw new RuntimeException("BRAM takes id, size, maxWidth and lutRatio");
+            return new BRAM(value[0], value[1], value[2], value[3]);
+        }
+        throw new RuntimeException("unknown RAM type " + token[0]);
+    }
+
+    /**
+     * Describe an architecture in the form of the description file
+     * @param ramTypes the RAM types of the architecture
+     * @return the description
+     */
+    public static String describe(List<RAMType> ramTypes){
+        StringBuilder sb = new StringBuilder();
+        for (RAMType type : ramTypes) {
+            if (sb.length() > 0) sb.append("; ");
+            if (type.getLutImpl() != 0) {
+                sb.append("LUTRAM ").append(type.getId()).append(' ').append(type.getSize()).append(' ')
+                .append(type.getMinWidth()).append(' ').append(type.getMaxWidth()).append(' ').append(type.getLutRatio());
+            } else {
+                sb.append("BRAM ").append(type.getId()).append(' ').append(type.getSize()).append(' ')
+                .append(type.getMaxWidth()).append(' ').append(type.getLutRatio());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class {@code Benchmark} holds the logical RAMs and the logic block count of every
+ * circuit in the benchmark suite. The logical RAMs are kept as packed arrays ordered by
+ * circuit, the RAMs of circuit {@code c} are stored in {@code [circuitOffset[c], circuitOffset[c + 1])}.
+ * <p>
+ * The input files are memory-mapped and the integers and mode tokens are parsed directly
+ * from the bytes, without creating any object per line. The parsed result is cached in a
+ * {@link BenchmarkSnapshot} next to the inputs, which is used instead of the text as long as
+ * the inputs are unchanged, so the inputs are not read at all when the snapshot is used.
+ * Set {@code -Dbenchmark.snapshot=false} to always parse the text.
+ */
+public class Benchmark {
+
+    public static final String RAM_FILE = "logical_rams.txt";
+    public static final String LOGIC_BLOCK_FILE = "logic_block_count.txt";
+    public static final boolean SNAPSHOT_ENABLED = Boolean.parseBoolean(System.getProperty("benchmark.snapshot", "true"));
+
+    protected int circuitNum;
+    protected int[] circuitOffset;
+    protected int[] ramId, mode, depth, width; // mode is the ordinal of RAMMode
+    protected int[] logicBlockCount;
+    protected long checksum;    // of both input files
+    protected long inputBytes;
+    protected long loadTime; // in nanoseconds
+    protected boolean fromSnapshot;
+    protected List<LogicalRAM>[] ramRecordsList;
+
+    protected Benchmark(){
+    }
+
+    /**
+     * Load the benchmark from the default input files in the working directory
+     * @return the loaded benchmark
+     * @throws IOException if any file cannot be read or is malformed
+     */
+    public static Benchmark load() throws IOException {
+        return load(new File(RAM_FILE), new File(LOGIC_BLOCK_FILE));
+    }
+
+    /**
+     * Load the benchmark from the given input files
+     * @param ramFile the logical RAM list, in the format of logical_rams.txt
+     * @param logicBlockFile the logic block count of each circuit, in the format of logic_block_count.txt
+     * @return the loaded benchmark
+     * @throws IOException if any file cannot be read or is malformed
+     */
+    public static Benchmark load(File ramFile, File logicBlockFile) throws IOException {
+        return load(ramFile, logicBlockFile, SNAPSHOT_ENABLED);
+    }
+
+    /**
+     * Load the benchmark from the given input files
+     * @param ramFile the logical RAM list, in the format of logical_rams.txt
+     * @param logicBlockFile the logic block count of each circuit, in the format of logic_block_count.txt
+     * @param useSnapshot if false, the text is always parsed and no snapshot is written
+     * @return the loaded benchmark
+     * @throws IOException if any file cannot be read or is malformed
+     */
+    public static Benchmark load(File ramFile, File logicBlockFile, boolean useSnapshot) throws IOException {
+        long startTime = System.nanoTime();
+        Benchmark benchmark = null;
+        if (useSnapshot) {
+            benchmark = BenchmarkSnapshot.read(ramFile, logicBlockFile);
+            if (benchmark != null) benchmark.fromSnapshot = true;
+        }
+        if (benchmark == null) {
+            ByteBuffer ramBuf = map(ramFile);
+            ByteBuffer logicBlockBuf = map(logicBlockFile);
+            long ramChecksum = BenchmarkSnapshot.checksum(ramBuf);
+            long logicBlockChecksum = BenchmarkSnapshot.checksum(logicBlockBuf);
+            benchmark = parse(ramBuf, logicBlockBuf);
+            benchmark.checksum = ramChecksum * 31 + logicBlockChecksum;
+            if (useSnapshot) {
+                try {
+                    BenchmarkSnapshot.write(benchmark, ramFile, ramChecksum, logicBlockFile, logicBlockChecksum);
+                } catch (IOException ioe) {
+                    System.err.println("Cannot write the benchmark snapshot: " + ioe.getMessage());
+                }
+            }
+        }
+        benchmark.inputBytes = ramFile.length() + logicBlockFile.length();
+        benchmark.loadTime = System.nanoTime() - startTime;
+        return benchmark;
+    }
+
+    /**
+     * Get the number of circuit in the benchmark
+     * @return number of circuit
+     */
+    public int getCircuitNum(){
+        return circuitNum;
+    }
+
+    /**
+     * Get the total number of logical RAM in the benchmark
+     * @return number of logical RAM
+     */
+    public int getRAMNum(){
+        return circuitOffset[circuitNum];
+    }
+
+    /**
+     * Get the checksum of the input files, which changes whenever any input file changes
+     * @return the checksum
+     */
+    public long getChecksum(){
+        return checksum;
+    }
+
+    /**
+     * Get the logic block count of each circuit
+     * @return the logic block count indexed by circuit id
+     */
+    public int[] getLogicBlockCount(){
+        return logicBlockCount;
+    }
+
+    /**
+     * Get the LogicalRAM list of each circuit, in the order of the input file.
+     * The lists are generated on the first call and shared afterwards.
+     * @return the LogicalRAM list indexed by circuit id
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<LogicalRAM>[] getRAMRecords(){
+        if (ramRecordsList == null) {
+            RAMMode[] modes = RAMMode.values();
+            ramRecordsList = new List[circuitNum];
+            for (int c = 0; c < circuitNum; c++) {
+                ArrayList<LogicalRAM> list = new ArrayList<>(circuitOffset[c + 1] - circuitOffset[c]);
+                for (int r = circuitOffset[c]; r < circuitOffset[c + 1]; r++) {
+                    list.add(new LogicalRAM(ramId[r], modes[mode[r]], width[r], depth[r]));
+                }
+                ramRecordsList[c] = list;
+            }
+        }
+        return ramRecordsList;
+    }
+
+    /**
+     * Get a one-line summary of the loading time and throughput
+     * @return the summary
+     */
+    public String getLoadReport(){
+        double megaBytes = inputBytes / 1e6;
+        double seconds = loadTime / 1e9;
+        return String.format("Loaded %d circuits (%d logical RAMs, %.2f MB) %sin %.3fms, %.1f MB/s",
+        circuitNum, getRAMNum(), megaBytes, fromSnapshot ? "from snapshot " : "", seconds * 1e3, megaBytes / seconds);
+    }
+
+    private static Benchmark parse(ByteBuffer ramBuf, ByteBuffer logicBlockBuf) throws IOException {
+        Benchmark benchmark = new Benchmark();
+        benchmark.parseRAMs(ramBuf);
+        benchmark.parseLogicBlocks(logicBlockBuf);
+        return benchmark;
+    }
+
+    /**
+     * Map a whole file in memory
+     */
+    static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2GB");
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Parse the logical RAM list. The records are read in the order of the file and then
+     * grouped by circuit with a stable counting sort.
+     */
+    private void parseRAMs(ByteBuffer buf) throws IOException {
+        ByteParser parser = new ByteParser(buf);
+        parser.skipToken(); // Skip useless word
+        circuitNum = parser.nextInt();
+        parser.skipLine(); // skip the rest of the first line
+        parser.skipLine(); // skip second line
+
+        int capacity = Math.max(16, buf.limit() / 24); // a record takes about 24 bytes
+        int[] fileCircuit = new int[capacity];
+        int[] fileRamId = new int[capacity];
+        int[] fileMode = new int[capacity];
+        int[] fileDepth = new int[capacity];
+        int[] fileWidth = new int[capacity];
+        int n = 0;
+        while (parser.hasNext()) {
+            if (n == fileCircuit.length) {
+                capacity = capacity * 2;
+                fileCircuit = Arrays.copyOf(fileCircuit, capacity);
+                fileRamId = Arrays.copyOf(fileRamId, capacity);
+                fileMode = Arrays.copyOf(fileMode, capacity);
+                fileDepth = Arrays.copyOf(fileDepth, capacity);
+                fileWidth = Arrays.copyOf(fileWidth, capacity);
+            }
+            int circuitId = parser.nextInt();
+            if (circuitId < 0 || circuitId >= circuitNum) {
+                throw new IOException("Circuit id " + circuitId + " out of range at byte " + parser.pos);
+            }
+            fileCircuit[n] = circuitId;
+            fileRamId[n] = parser.nextInt();
+            fileMode[n] = parser.nextMode().ordinal();
+            fileDepth[n] = parser.nextInt();
+            fileWidth[n] = parser.nextInt();
+            n++;
+        }
+
+        // Group the records by circuit
+        circuitOffset = new int[circuitNum + 1];
+        for (int r = 0; r < n; r++) {
+            circuitOffset[fileCircuit[r] + 1]++;
+        }
+        for (int c = 0; c < circuitNum; c++) {
+            circuitOffset[c + 1] += circuitOffset[c];
+        }
+        int[] next = Arrays.copyOf(circuitOffset, circuitNum);
+        ramId = new int[n];
+        mode = new int[n];
+        depth = new int[n];
+        width = new int[n];
+        for (int r = 0; r < n; r++) {
+            int slot = next[fileCircuit[r]]++;
+            ramId[slot] = fileRamId[r];
+            mode[slot] = fileMode[r];
+            depth[slot] = fileDepth[r];
+            width[slot] = fileWidth[r];
+        }
+    }
+
+    /**
+     * Parse the logic block count of each circuit
+     */
+    private void parseLogicBlocks(ByteBuffer buf) throws IOException {
+        ByteParser parser = new ByteParser(buf);
+        parser.skipLine(); // skip the first line
+        logicBlockCount = new int[circuitNum];
+        while (parser.hasNext()) {
+            int circuitId = parser.nextInt();
+            if (circuitId < 0 || circuitId >= circuitNum) {
+                throw new IOException("Circuit id " + circuitId + " out of range at byte " + parser.pos);
+            }
+            logicBlockCount[circuitId] = parser.nextInt();
+        }
+    }
+
+    /**
+     * Read whitespace separated tokens from a buffer of ASCII text
+     */
+    private static class ByteParser {
+        private final ByteBuffer buf;
+        private final int limit;
+        private int pos;
+
+        ByteParser(ByteBuffer buf){
+            this.buf = buf;
+            this.limit = buf.limit();
+            this.pos = 0;
+        }
+
+        /**
+         * Skip the whitespaces and check whether there is another token
+         */
+        boolean hasNext(){
+            while (pos < limit && isSpace(buf.get(pos))) pos++;
+            return pos < limit;
+        }
+
+        void skipLine(){
+            while (pos < limit && buf.get(pos) != '\n') pos++;
+            pos++;
+        }
+
+        void skipToken() throws IOException {
+            if (!hasNext()) throw new IOException("Unexpected end of file");
+            while (pos < limit && !isSpace(buf.get(pos))) pos++;
+        }
+
+        int nextInt() throws IOException {
+            if (!hasNext()) throw new IOException("Unexpected end of file");
+            int value = 0;
+            int start = pos;
+            while (pos < limit && !isSpace(buf.get(pos))) {
+                int digit = buf.get(pos) - '0';
+                if (digit < 0 || digit > 9) throw new IOException("Malformed integer at byte " + start);
+                value = value * 10 + digit;
+                pos++;
+            }
+            return value;
+        }
+
+        RAMMode nextMode() throws IOException {
+            if (!hasNext()) throw new IOException("Unexpected end of file");
+            int start = pos;
+            while (pos < limit && !isSpace(buf.get(pos))) pos++;
+            RAMMode mode = RAMMode.parseMode(buf, start, pos);
+            if (mode == null) throw new IOException("Unknown RAM mode at byte " + start);
+            return mode;
+        }
+
+        private static boolean isSpace(byte b){
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * The class {@code BenchmarkSnapshot} keeps a binary copy of a parsed {@link Benchmark} next to
+ * the input files, so that later runs can skip the text parsing. The snapshot is used without
+ * reading the inputs as long as their size and modification time are unchanged. Otherwise the
+ * checksum of the input decides, and the snapshot is stamped again if only the time changed.
+ * <p>
+ * Layout (little endian): magic, version, then size, mtime and CRC32C of the RAM file and of the
+ * logic block file, circuit count, RAM count, the per-circuit RAM count, the packed ids, modes,
+ * depths and widths, the logic block counts, and finally the CRC32C of everything before it.
+ */
+public class BenchmarkSnapshot {
+
+    public static final String SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x4E53524C; // "LRSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * 2 + 8 * 6 + 4 * 2;
+
+    /**
+     * Get the snapshot file of a RAM file
+     * @param ramFile the logical RAM list
+     * @return the snapshot file, in the same directory
+     */
+    public static File getFile(File ramFile){
+        return new File(ramFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Calculate the checksum of an input file
+     * @param buf content of the file
+     * @return the CRC32C of the content
+     */
+    public static long checksum(ByteBuffer buf){
+        CRC32C crc = new CRC32C();
+        crc.update(buf.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * Calculate the checksum of an input file
+     * @param input the input file
+     * @return the CRC32C of the content
+     * @throws IOException if the file cannot be read
+     */
+    public static long checksum(File input) throws IOException {
+        return checksum(Benchmark.map(input));
+    }
+
+    /**
+     * Read the snapshot of the given input files. An input is only read if its size or modification
+     * time differs from the snapshot, to compare its checksum.
+     * @param ramFile the logical RAM list
+     * @param logicBlockFile the logic block count file
+     * @return the benchmark, {@code null} if there is no valid snapshot for these inputs
+     * @throws IOException if the snapshot exists but cannot be read
+     */
+    public static Benchmark read(File ramFile, File logicBlockFile) throws IOException {
+        File file = getFile(ramFile);
+        if (!file.isFile() || file.length() < HEADER_BYTES + 8) return null;
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return null;
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+        long[] ramStamp = {buf.getLong(), buf.getLong(), buf.getLong()};
+        long[] logicBlockStamp = {buf.getLong(), buf.getLong(), buf.getLong()};
+        int circuitNum = buf.getInt();
+        int ramNum = buf.getInt();
+        long payloadBytes = HEADER_BYTES + 4L * (circuitNum + 4L * ramNum + circuitNum);
+        if (circuitNum < 0 || ramNum < 0 || payloadBytes + 8 != buf.limit()) return null;
+
+        // Verify the snapshot itself before trusting the arrays
+        CRC32C crc = new CRC32C();
+        ByteBuffer payload = buf.duplicate();
+        payload.position(0).limit((int) payloadBytes);
+        crc.update(payload);
+        if (buf.getLong((int) payloadBytes) != crc.getValue()) return null;
+
+        Benchmark benchmark = new Benchmark();
+        benchmark.circuitNum = circuitNum;
+        IntBuffer ints = buf.asIntBuffer();
+        int[] ramCount = new int[circuitNum];
+        ints.get(ramCount);
+        benchmark.circuitOffset = new int[circuitNum + 1];
+        for (int c = 0; c < circuitNum; c++) {
+            benchmark.circuitOffset[c + 1] = benchmark.circuitOffset[c] + ramCount[c];
+        }
+        if (benchmark.circuitOffset[circuitNum] != ramNum) return null;
+        benchmark.ramId = new int[ramNum];
+        benchmark.mode = new int[ramNum];
+        benchmark.depth = new int[ramNum];
+        benchmark.width = new int[ramNum];
+        benchmark.logicBlockCount = new int[circuitNum];
+        ints.get(benchmark.ramId);
+        ints.get(benchmark.mode);
+        ints.get(benchmark.depth);
+        ints.get(benchmark.width);
+        ints.get(benchmark.logicBlockCount);
+
+        // The inputs are only read when the stamps differ
+        boolean ramTouched = !stampMatches(ramStamp, ramFile);
+        boolean logicBlockTouched = !stampMatches(logicBlockStamp, logicBlockFile);
+        if (ramTouched && checksum(ramFile) != ramStamp[2]) return null;
+        if (logicBlockTouched && checksum(logicBlockFile) != logicBlockStamp[2]) return null;
+        benchmark.checksum = ramStamp[2] * 31 + logicBlockStamp[2];
+        if (ramTouched || logicBlockTouched) {
+            try {
+                write(benchmark, ramFile, ramStamp[2], logicBlockFile, logicBlockStamp[2]);
+            } catch (IOException ioe) {
+                System.err.println("Cannot stamp the benchmark snapshot again: " + ioe.getMessage());
+            }
+        }
+        return benchmark;
+    }
+
+    /**
+     * Write the snapshot of a benchmark parsed from the given input files. The snapshot is
+     * written to a temporary file first and then moved in place, so other processes never
+     * see a partial snapshot.
+     * @param benchmark the parsed benchmark
+     * @param ramFile the logical RAM list
+     * @param ramChecksum checksum of the logical RAM list
+     * @param logicBlockFile the logic block count file
+     * @param logicBlockChecksum checksum of the logic block count file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(Benchmark benchmark, File ramFile, long ramChecksum, File logicBlockFile, long logicBlockChecksum) throws IOException {
+        int circuitNum = benchmark.circuitNum;
+        int ramNum = benchmark.getRAMNum();
+        long payloadBytes = HEADER_BYTES + 4L * (circuitNum + 4L * ramNum + circuitNum);
+        if (payloadBytes + 8 > Integer.MAX_VALUE) throw new IOException("Benchmark is too large for a snapshot");
+
+        ByteBuffer buf = ByteBuffer.allocate((int) payloadBytes + 8).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION);
+        putStamp(buf, ramFile, ramChecksum);
+        putStamp(buf, logicBlockFile, logicBlockChecksum);
+        buf.putInt(circuitNum).putInt(ramNum);
+        IntBuffer ints = buf.asIntBuffer();
+        for (int c = 0; c < circuitNum; c++) {
+            ints.put(benchmark.circuitOffset[c + 1] - benchmark.circuitOffset[c]);
+        }
+        ints.put(benchmark.ramId, 0, ramNum);
+        ints.put(benchmark.mode, 0, ramNum);
+        ints.put(benchmark.depth, 0, ramNum);
+        ints.put(benchmark.width, 0, ramNum);
+        ints.put(benchmark.logicBlockCount);
+        buf.position((int) payloadBytes);
+
+        CRC32C crc = new CRC32C();
+        ByteBuffer payload = buf.duplicate();
+        payload.flip();
+        crc.update(payload);
+        buf.putLong(crc.getValue());
+        buf.flip();
+
+        File file = getFile(ramFile);
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete(); // no effect once moved
+        }
+    }
+
+    private static boolean stampMatches(long[] stamp, File input) throws IOException {
+        return stamp[0] == input.length() && stamp[1] == lastModified(input);
+    }
+
+    private static void putStamp(ByteBuffer buf, File input, long checksum) throws IOException {
+        buf.putLong(input.length()).putLong(lastModified(input)).putLong(checksum);
+    }
+
+    private static long lastModified(File input) throws IOException {
+        return Files.getLastModifiedTime(input.toPath()).toMillis();
+    }
+}
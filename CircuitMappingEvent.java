@@ -0,0 +1,53 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event of mapping a circuit with {@link CircuitRAM#parseCircuit}. The event is disabled
+ * by default, see memorycad.jfc to record it.
+ */
+@Name("memorycad.CircuitMapping")
+@Label("Circuit Mapping")
+@Category("MemoryCAD")
+@Description("Mapping of the logical RAMs of a circuit")
+@Enabled(false)
+@StackTrace(false)
+public class CircuitMappingEvent extends jdk.jfr.Event {
+
+    @Label("Circuit")
+    public int circuit;
+
+    @Label("RAM Types")
+    public int typeCount;
+
+    @Label("Logical RAMs")
+    public int ramCount;
+
+    @Label("Loop Iterations")
+    @Description("Iterations of the placement loop, each places a run of rams or adds temporal LUT")
+    public int loopIterations;
+
+    @Label("Temporal LUT Steps")
+    @Description("Times the temporal LUT is increased")
+    public int tempLUTSteps;
+
+    @Label("Temporal LUT Added")
+    public long tempLUTAdded;
+
+    @Label("Re-parsed RAMs")
+    @Description("Rams implemented again with a larger type")
+    public int reparsed;
+
+    @Label("LUT Required")
+    public int lutRequired;
+
+    @Label("Utilization")
+    @Description("Used/available physical RAMs of each type, as id:used/available")
+    public String utilization;
+
+    @Label("Total Area")
+    public long totalArea;
+}
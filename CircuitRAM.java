@@ -1,265 +1,496 @@
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Queue;
 
 public class CircuitRAM {
     protected int id;
     protected ResourceOrganizer resource;
     protected List<LogicalRAM> logicRAMList;
     protected List<RAMType> ramTypeList;
-
-    private CircuitRAM(int id, int basicLUT, List<RAMType> ramTypeSet){
+    protected RAMPlacement placement;
+    // Counters of the placement, recorded in CircuitMappingEvent
+    protected int loopIterations;
+    protected int tempLUTSteps;
+    protected long tempLUTAdded;
+    protected int reparsed;
+
+    private CircuitRAM(int id, ResourceOrganizer resource){
         this.id = id;
-        this.ramTypeList = new ArrayList<>(ramTypeSet);
+        this.ramTypeList = new ArrayList<>(Arrays.asList(resource.getTypes()));
         this.ramTypeList.sort(((o1, o2) -> o2.getSize() - o1.getSize())); // Place them in the descending order
-        this.resource = new ResourceOrganizer(basicLUT, ramTypeSet);
+        this.resource = resource;
     }
 
     /**
-     * Parse all the rams in the given RAM list and generate a {@code CircuitRAM} with the specified logical RAM
+     * Parse all the rams in the given RAM list and generate a {@code CircuitRAM} with the specified logical RAM.
+     * The LogicalRAM list is not modified, so the same list can be mapped with several architectures at the
+     * same time. The mapping result of each RAM is recorded in {@link #placement}.
+     * <p>
+     * The rams are handled as runs of the same shape (see {@link ShapeHistogram}). A run is placed in one step
+     * with the number of rams that would have been placed one by one, so the result is the same as placing
+     * every ram separately.
+     * <p>
+     * Any number of RAM types is supported. The smallest types which are LUTRAM, if any, implement the small
+     * rams, and the other types form a chain of BRAM from the largest one, see
+     * {@link #placeChain(RAMOrder, RAMType[], int[], RAMType[], int[])}.
      * @param id id of the circuit
      * @param basicLUT basic LUT usage of the circuit (excluding all memory related LUTs)
      * @param ramRecord the LogicalRAM list
      * @return a new instance of the {@code CircuitRAM} with logical RAM fully parsed
      */
     public static CircuitRAM parseCircuit(int id, int basicLUT, List<LogicalRAM> ramRecord, List<RAMType> ramTypeSet){
-        CircuitRAM circuitRAM = new CircuitRAM(id, basicLUT, ramTypeSet);
-        circuitRAM.logicRAMList = ramRecord;
-        LinkedList<LogicalRAM> unparsedRecord = new LinkedList<>(ramRecord); // Clone the instance since we will operate the list
-        ResourceOrganizer resource = circuitRAM.resource;
+        return parseCircuit(id, ramRecord, new ResourceOrganizer(basicLUT, ramTypeSet));
+    }
 
-        // First, place all logical RAM in size-order
+    /**
+     * Parse all the rams in the given RAM list with an existing {@link ResourceOrganizer}. The organizer
+     * must be {@link ResourceOrganizer#reset(int) reset} with the basic LUT usage of the circuit, and it
+     * records the resource usage of this circuit afterwards.
+     * @param id id of the circuit
+     * @param ramRecord the LogicalRAM list
+     * @param resource the organizer of the RAM types to be used
+     * @return a new instance of the {@code CircuitRAM} with logical RAM fully parsed
+     */
+    public static CircuitRAM parseCircuit(int id, List<LogicalRAM> ramRecord, ResourceOrganizer resource){
+        return parseCircuit(id, ramRecord, RAMOrder.of(ramRecord), resource);
+    }
 
-        unparsedRecord.sort(((o1, o2) -> o1.d * o1.w - o2.d * o2.w)); // ascending order
+    /**
+     * Parse all the rams in the given RAM list with an existing {@link ResourceOrganizer} and the placement
+     * order of the circuit, which can be generated once and reused for every architecture.
+     * @param id id of the circuit
+     * @param ramRecord the LogicalRAM list
+     * @param order the placement order of the rams, see {@link RAMOrder#of(List)}
+     * @param resource the organizer of the RAM types to be used
+     * @return a new instance of the {@code CircuitRAM} with logical RAM fully parsed
+     */
+    public static CircuitRAM parseCircuit(int id, List<LogicalRAM> ramRecord, RAMOrder order, ResourceOrganizer resource){
+        CircuitMappingEvent event = new CircuitMappingEvent();
+        event.begin();
+        CircuitRAM circuitRAM = new CircuitRAM(id, resource);
+        circuitRAM.logicRAMList = ramRecord;
+        circuitRAM.placement = new RAMPlacement(ramRecord);
+
+        // The rams are placed in size-order (ascending), the dual-port RAM first (BRAM type only)
+        int typeNum = circuitRAM.ramTypeList.size();
+        if (typeNum == 0) throw new RuntimeException("No valid input RAM type");
+        RAMType[] types = circuitRAM.ramTypeList.toArray(new RAMType[0]);
+        int[] slots = new int[typeNum]; // slot of each type in the organizer, resolved once for the placement
+        for (int t = 0; t < typeNum; t++) {
+            slots[t] = resource.getSlot(types[t]);
+        }
+        if (typeNum == 1) {
+            circuitRAM.placeForced(order.all.cursor(), types[0], slots[0]);
+        } else {
+            // The smallest types which are LUTRAM fill the small rams, if there is any.
+            // The others form a chain of BRAM from the largest one.
+            int lutramNum = 0;
+            while (lutramNum < typeNum - 1 && types[typeNum - 1 - lutramNum].getLutImpl() != 0) lutramNum++;
+            int chainNum = typeNum - lutramNum;
+            circuitRAM.placeChain(order, Arrays.copyOf(types, chainNum), Arrays.copyOf(slots, chainNum),
+            Arrays.copyOfRange(types, chainNum, typeNum), Arrays.copyOfRange(slots, chainNum, typeNum));
+        }
 
-        LinkedList<LogicalRAM> trueDualPortList = new LinkedList<>();
+        resource.releaseTempLUT(); // try to release some of the tempLUT.
 
-        // Then, initialize all the dual-port RAM (BRAM type only)
-        switch (circuitRAM.ramTypeList.size()){
-            case 1:
-            RAMType type = circuitRAM.ramTypeList.get(0);
-            for (LogicalRAM ram : unparsedRecord) {
-                int ramUsage = ram.peekSize(type);
-                if(!resource.ready(type, ramUsage)){
-                    resource.addTempLUT(ramUsage * type.getLutRatio());
-                }
-                ram.parse(type);
-                resource.addLUT(ram.additionalLUT);
-                resource.addRAM(ram.type, ram.serial * ram.parallel);
-            }
-            break;
-            
-            case 2:
+        event.end();
+        if (event.shouldCommit()) {
+            circuitRAM.fillEvent(event);
+            event.commit();
+        }
+        return circuitRAM;
+    }
 
-            for (LogicalRAM ram : unparsedRecord) {
-                if (ram.mode == RAMMode.TRUEDUALPORT){
-                    trueDualPortList.add(ram);
-                }
+    /**
+     * Place the rams with a chain of BRAM types and the LUTRAM types.
+     * <ul>
+     * <li>With a single BRAM, the true dual port rams are forced to it first, and placed again with the
+     * other rams. With more BRAM, they go to the two largest types.</li>
+     * <li>The rams with the largest size are implemented with the largest BRAM until it is full, then with
+     * each smaller BRAM. A ram in a smaller BRAM may be promoted to the next larger BRAM later.</li>
+     * <li>Then the rams with the least size are implemented with LUTRAM, if any, which increases the capacity
+     * of all the types, and the rams are promoted and the largest rams filled again, until every ram is placed.
+     * When nothing can be placed, temporal LUT is added until one more ram is placeable.</li>
+     * </ul>
+     * @param order the placement order of the rams
+     * @param chain the BRAM types, from the largest one
+     * @param chainSlots the slots of the BRAM types in the organizer
+     * @param lutrams the LUTRAM types, from the largest one, may be empty
+     * @param lutramSlots the slots of the LUTRAM types in the organizer
+     */
+    private void placeChain(RAMOrder order, RAMType[] chain, int[] chainSlots, RAMType[] lutrams, int[] lutramSlots){
+        int levels = chain.length;
+        RunQueue[] queues = new RunQueue[levels]; // rams of each BRAM which may be promoted, none for the largest
+        ShapeHistogram.Cursor unparsed;
+        if (levels == 1) {
+            // The true dual port rams are placed again with the others
+            placeForced(order.trueDualPort.cursor(), chain[0], chainSlots[0]);
+            unparsed = order.all.cursor();
+            // Try to implement with BRAM until full
+            fillFromLast(unparsed, chain[0], chainSlots[0], null);
+        } else {
+            placeTrueDualPort(order.trueDualPort.cursor(), chain[0], chainSlots[0], chain[1], chainSlots[1]);
+            unparsed = order.others.cursor();
+            // Start Generating the largest logical RAM with the largest BRAM until reach the limit
+            fillFromLast(unparsed, chain[0], chainSlots[0], null);
+            // Then with each smaller BRAM, if capacity increases they can be promoted to the next larger BRAM
+            for (int level = 1; level < levels; level++) {
+                queues[level] = new RunQueue(unparsed.getOrder());
+                fillFromLast(unparsed, chain[level], chainSlots[level], queues[level]);
             }
+            resource.releaseTempLUT();
+        }
 
-            for (LogicalRAM ram : trueDualPortList) {
-                int peekedSize = ram.peekSize(circuitRAM.ramTypeList.get(0));
-                if (!resource.ready(circuitRAM.ramTypeList.get(0), peekedSize)){
-                    resource.addTempLUT(peekedSize * circuitRAM.ramTypeList.get(0).getLutRatio());
-                }
-                ram.parse(circuitRAM.ramTypeList.get(0));
-                resource.addLUT(ram.additionalLUT);
-                resource.addRAM(ram.type, ram.serial * ram.parallel);
+        // Generate LUTRAM from the logical RAM from least size, and produce BRAM if capacity increases
+        int fillFrom = levels == 1 ? 0 : 1; // the largest BRAM is filled in the loop only if it is the only one
+        while(!unparsed.isEmpty()){
+            loopIterations++;
+
+            // If this flag is false after the loop block, this means all the resources
+            // runs out. So we need to allocate some more LUT for this circuit (wastage)
+            boolean ramParsed = placeLUTRAM(unparsed, lutrams, lutramSlots, chain, chainSlots, queues);
+
+            // Try to replace the rams with the next larger BRAM
+            for (int level = 1; level < levels; level++) {
+                if (promote(queues[level], chainSlots[level], chain[level - 1], chainSlots[level - 1])) ramParsed = true;
             }
 
-            // Try to implement with BRAM until full
-            while(resource.ready(circuitRAM.ramTypeList.get(0)) && unparsedRecord.size() > 0){
-                LogicalRAM ram = unparsedRecord.getLast(); // Get the element with largest size
-                // Peek the size of this element as if implemented in such type of RAM
-                if (!resource.ready(circuitRAM.ramTypeList.get(0),  ram.peekSize(circuitRAM.ramTypeList.get(0)))) break;
-                ram.parse(circuitRAM.ramTypeList.get(0));
-                resource.addLUT(ram.additionalLUT);
-                resource.addRAM(ram.type, ram.serial * ram.parallel);
-                unparsedRecord.removeLast();
+            // Try to generate BRAMs for the largest rams
+            for (int level = fillFrom; level < levels; level++) {
+                if (fillFromLast(unparsed, chain[level], chainSlots[level], queues[level])) ramParsed = true;
             }
 
-            while(unparsedRecord.size() > 0){
-
-                boolean ramParsed = false; 
-                // If this flag is false after the loop block, this means all the resources
-                // runs out. So we need to allocate some more LUT for this circuit (wastage)
-
-                // parse a LUTRAM
-                if(resource.ready(circuitRAM.ramTypeList.get(1), unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(1))) && 
-                unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(1)) <= 16) {
-                    // When LUT allocation
-                    LogicalRAM ram = unparsedRecord.removeFirst();
-                    ram.parse(circuitRAM.ramTypeList.get(1));
-                    resource.addLUT(ram.additionalLUT);
-                    resource.addRAM(ram.type, ram.serial * ram.parallel);
-                    resource.addLUT(ram.serial * ram.parallel * MemoryCAD.LOGICBLOCKLUT);
-                    ramParsed = true;
-                }
-                
-                while(resource.ready(circuitRAM.ramTypeList.get(0)) && unparsedRecord.size() > 0){
-                    LogicalRAM ram = unparsedRecord.getLast(); // Get the element with largest size
-                    // Peek the size of this element as if implemented in such type of RAM
-                    if (!resource.ready(circuitRAM.ramTypeList.get(0),  ram.peekSize(circuitRAM.ramTypeList.get(0)))) break;
-                    ram.parse(circuitRAM.ramTypeList.get(0));
-                    resource.addLUT(ram.additionalLUT);
-                    resource.addRAM(ram.type, ram.serial * ram.parallel);
-                    unparsedRecord.removeLast();
-                    ramParsed = true;
-                }
-                
-                if (ramParsed == false){ // Allocate some temporal LUT so that the program will not stuck
-                    int lutTemp = unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(1)) * circuitRAM.ramTypeList.get(1).getLutRatio();
-                    if(unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(1)) >= 16) lutTemp = Integer.MAX_VALUE; // Not taken
-                    int bramTemp = unparsedRecord.getLast().peekSize(circuitRAM.ramTypeList.get(0)) * circuitRAM.ramTypeList.get(0).getLutRatio();
-                    int minTempLUTIncrease = lutTemp > bramTemp ? bramTemp : lutTemp;
-                    resource.addTempLUT(minTempLUTIncrease);
-                    // We can add a little bit more TempLUT, b/c we will clean the unused tempLUT anyway
-                }
+            if (ramParsed == false){ // Allocate some temporal LUT so that the program will not stuck
+                addMinTempLUT(unparsed, lutrams, lutramSlots, chain, chainSlots, queues);
             }
-            break;
+        }
+    }
+
+    /**
+     * Implement every ram of the sequence with the specified type in order. When the type is not ready,
+     * temporal LUT for one more ram is added before the ram is placed.
+     * @param rams the rams to be placed
+     * @param type the RAMType in use
+     * @param slot slot of the type in the organizer
+     */
+    private void placeForced(ShapeHistogram.Cursor rams, RAMType type, int slot){
+        while (!rams.isEmpty()) {
+            LogicalRAM ram = logicRAMList.get(rams.first());
+            int count = rams.firstRun();
+            addTempLUT((int) resource.forcedTempLUT(slot, ram.peekSize(type), ram.peekLUT(type), count), "forced");
+            placeRun(rams.getOrder(), rams.removeFirst(count), count, type, slot, 0);
+        }
+    }
 
-            case 3:
+    /**
+     * Implement the rams with the largest size with the specified type, until the type is not ready
+     * @param rams the rams to be placed
+     * @param type the RAMType in use
+     * @param slot slot of the type in the organizer
+     * @param queue if not {@code null}, the placed rams are recorded in this queue from the largest one
+     * @return true if any ram is placed
+     */
+    private boolean fillFromLast(ShapeHistogram.Cursor rams, RAMType type, int slot, RunQueue queue){
+        boolean ramParsed = false;
+        while (!rams.isEmpty()) {
+            LogicalRAM ram = logicRAMList.get(rams.last()); // Get the element with largest size
+            int run = rams.lastRun();
+            // Peek the size of this element as if implemented in such type of RAM
+            int count = resource.readyCount(slot, ram.peekSize(type), ram.peekLUT(type), run);
+            if (count == 0) break;
+            int from = rams.removeLast(count);
+            placeRun(rams.getOrder(), from, count, type, slot, 0);
+            if (queue != null) queue.offer(from, count);
+            ramParsed = true;
+            if (count < run) break;
+        }
+        return ramParsed;
+    }
 
-            for (LogicalRAM ram : unparsedRecord) {
-                if (ram.mode == RAMMode.TRUEDUALPORT){
-                    trueDualPortList.add(ram);
+    /**
+     * Implement the rams with the least size with LUTRAM. As the other types are checked again after each
+     * LUTRAM in the placement loop, the rams are placed until one of the other types gets ready. Among the
+     * LUTRAM types which can take the ram, the one with the least LUT usage is used.
+     * @param rams the rams to be placed
+     * @param lutrams the LUTRAM types
+     * @param lutramSlots the slots of the LUTRAM types in the organizer
+     * @param chain the BRAM types, from the largest one
+     * @param chainSlots the slots of the BRAM types in the organizer
+     * @param queues the rams of each BRAM which may be promoted to the next larger BRAM
+     * @return true if any ram is placed
+     */
+    private boolean placeLUTRAM(ShapeHistogram.Cursor rams, RAMType[] lutrams, int[] lutramSlots, RAMType[] chain, int[] chainSlots, RunQueue[] queues){
+        LogicalRAM ram = logicRAMList.get(rams.first());
+        RAMType lutram = null;
+        int lutramSlot = -1, lutPerRAM = 0, count = 0;
+        for (int t = 0; t < lutrams.length; t++) {
+            RAMType type = lutrams[t];
+            int size = ram.peekSize(type);
+            if (size > 16) continue;
+            int lut = ram.peekLUT(type) + size * MemoryCAD.LOGICBLOCKLUT;
+            if (lutram != null && lut >= lutPerRAM) continue;
+            int ready = resource.readyCount(lutramSlots[t], size, lut, rams.firstRun());
+            if (ready == 0) continue;
+            lutram = type;
+            lutramSlot = lutramSlots[t];
+            lutPerRAM = lut;
+            count = ready;
+        }
+        if (lutram == null) return false;
+
+        // Find the LUT usage where the other types get ready
+        long target = Long.MAX_VALUE;
+        LogicalRAM last = logicRAMList.get(rams.last());
+        for (int level = chain.length == 1 ? 0 : 1; level < chain.length; level++) {
+            target = Math.min(target, (long) chain[level].getLutRatio() * (resource.getRAMCount(chainSlots[level]) + last.peekSize(chain[level])));
+        }
+        for (int level = 1; level < chain.length; level++) {
+            if (queues[level].isEmpty()) continue;
+            LogicalRAM promoted = logicRAMList.get(queues[level].peek());
+            RAMType promoteType = chain[level - 1];
+            target = Math.min(target, (long) promoteType.getLutRatio() * (resource.getRAMCount(chainSlots[level - 1]) + promoted.peekSize(promoteType)));
+        }
+        long steps = (target - resource.getLUTRequired() + lutPerRAM - 1) / lutPerRAM;
+        if (steps < count) count = (int) Math.max(1, steps);
+
+        placeRun(rams.getOrder(), rams.removeFirst(count), count, lutram, lutramSlot, MemoryCAD.LOGICBLOCKLUT);
+        return true;
+    }
+
+    /**
+     * Replace the rams in the queue with the specified type, from the largest one, until the type is not ready
+     * @param queue the rams to be promoted
+     * @param fromSlot slot of the type the rams in the queue are implemented with
+     * @param type the type to promote to
+     * @param slot slot of the type to promote to
+     * @return true if any ram is promoted
+     */
+    private boolean promote(RunQueue queue, int fromSlot, RAMType type, int slot){
+        boolean ramParsed = false;
+        while (!queue.isEmpty()) {
+            int index = queue.peek(); // The element with largest size
+            LogicalRAM ram = logicRAMList.get(index);
+            int run = queue.peekRun();
+            int count = resource.readyCount(slot, ram.peekSize(type), ram.peekLUT(type) - placement.additionalLUT[index], run);
+            if (count == 0) break;
+            // Remove the related resource usage record
+            resource.addLUT(-count * placement.additionalLUT[index]);
+            resource.addRAM(fromSlot, -count * placement.getBlocks(index));
+            // Parse the ram again with the largest RAM type
+            placeRun(queue.order, queue.poll(count), count, type, slot, 0);
+            reparsed += count;
+            ramParsed = true;
+            if (count < run) break;
+        }
+        return ramParsed;
+    }
+
+    /**
+     * Implement the true dual port rams. A ram goes to the largest type if it does not fit the second
+     * largest type and the largest type is ready, otherwise the ram with the least size goes to the second
+     * largest type.
+     * @param rams the true dual port rams
+     * @param largest the largest RAMType
+     * @param largestSlot slot of the largest type in the organizer
+     * @param second the second largest RAMType
+     * @param secondSlot slot of the second largest type in the organizer
+     */
+    private void placeTrueDualPort(ShapeHistogram.Cursor rams, RAMType largest, int largestSlot, RAMType second, int secondSlot){
+        while (!rams.isEmpty()) {
+            LogicalRAM last = logicRAMList.get(rams.last());
+            boolean large = last.w * last.d > second.getSize();
+            int lastSize = last.peekSize(largest);
+            if (large) {
+                int count = resource.readyCount(largestSlot, lastSize, last.peekLUT(largest), rams.lastRun());
+                if (count > 0) {
+                    placeRun(rams.getOrder(), rams.removeLast(count), count, largest, largestSlot, 0);
+                    continue;
                 }
             }
 
-            unparsedRecord.removeAll(trueDualPortList); // parsed, so remove from list
-
-            // for (LogicalRAM ram : trueDualPortList) {
-            //     if (ram.w * ram.d > circuitRAM.ramTypeList.get(1).getSize() && 
-            //     resource.ready(circuitRAM.ramTypeList.get(0), ram.peekSize(circuitRAM.ramTypeList.get(0)))){
-            //         ram.parse(circuitRAM.ramTypeList.get(0));
-            //     } else {
-            //         int peekedSize = ram.peekSize(circuitRAM.ramTypeList.get(1));
-            //         if (!resource.ready(circuitRAM.ramTypeList.get(1), peekedSize)){
-            //             resource.addTempLUT(peekedSize * circuitRAM.ramTypeList.get(1).getLutRatio());
-            //         }
-            //         ram.parse(circuitRAM.ramTypeList.get(1));
-            //     }
-            //     resource.addLUT(ram.additionalLUT);
-            //     resource.addRAM(ram.type, ram.serial * ram.parallel);
-            // }
-
-            while (trueDualPortList.size() > 0) {
-                LogicalRAM ram = trueDualPortList.peekLast();
-                if (ram.w * ram.d > circuitRAM.ramTypeList.get(1).getSize() && 
-                resource.ready(circuitRAM.ramTypeList.get(0), ram.peekSize(circuitRAM.ramTypeList.get(0)))){
-                    ram.parse(circuitRAM.ramTypeList.get(0));
-                    trueDualPortList.removeLast();
-                } else {
-                    ram = trueDualPortList.removeFirst();
-                    int peekedSize = ram.peekSize(circuitRAM.ramTypeList.get(1));
-                    if (!resource.ready(circuitRAM.ramTypeList.get(1), peekedSize)){
-                        resource.addTempLUT(peekedSize * circuitRAM.ramTypeList.get(1).getLutRatio());
+            LogicalRAM first = logicRAMList.get(rams.first());
+            int size = first.peekSize(second);
+            int lutPerRAM = first.peekLUT(second);
+            int count = rams.firstRun();
+            if (large) {
+                // Stop as soon as the largest type gets ready for the last ram
+                long target = (long) largest.getLutRatio() * (resource.getRAMCount(largestSlot) + lastSize);
+                int lo = 1, hi = count;
+                if (lutAfterForced(secondSlot, size, lutPerRAM, hi) >= target) {
+                    while (lo < hi) {
+                        int mid = (lo + hi) >>> 1;
+                        if (lutAfterForced(secondSlot, size, lutPerRAM, mid) >= target) hi = mid;
+                        else lo = mid + 1;
                     }
-                    ram.parse(circuitRAM.ramTypeList.get(1));
+                    count = lo;
                 }
-                resource.addLUT(ram.additionalLUT);
-                resource.addRAM(ram.type, ram.serial * ram.parallel);
             }
+            addTempLUT((int) resource.forcedTempLUT(secondSlot, size, lutPerRAM, count), "true dual port");
+            placeRun(rams.getOrder(), rams.removeFirst(count), count, second, secondSlot, 0);
+        }
+    }
 
-            // Start Generating the largest logical RAM with BRAM until reach the limit
-
-            while(resource.ready(circuitRAM.ramTypeList.get(0)) && unparsedRecord.size() > 0){
-                LogicalRAM ram = unparsedRecord.getLast(); // Get the element with largest size
-                // Peek the size of this element as if implemented in such type of RAM
-                if (!resource.ready(circuitRAM.ramTypeList.get(0),  ram.peekSize(circuitRAM.ramTypeList.get(0)))) break;
-                ram.parse(circuitRAM.ramTypeList.get(0));
-                resource.addLUT(ram.additionalLUT);
-                resource.addRAM(ram.type, ram.serial * ram.parallel);
-                unparsedRecord.removeLast();
-            }
+    /**
+     * Allocate temporal LUT in steps until one more ram is placeable: the next LUTRAM, the next BRAM of
+     * the types filled in the placement loop or the next promoted ram. A step is the LUT of the next ram
+     * in LUTRAM (only if it takes less than 16 LUTRAM) or in the smallest BRAM, whichever is less.
+     * A pass of the placement loop which places nothing does not change the usage, so the number of
+     * steps is solved from the LUT ratio of each type and all the steps are added at once, instead of
+     * running the loop again after each step.
+     * @param rams the rams to be placed
+     * @param lutrams the LUTRAM types
+     * @param lutramSlots the slots of the LUTRAM types in the organizer
+     * @param chain the BRAM types, from the largest one
+     * @param chainSlots the slots of the BRAM types in the organizer
+     * @param queues the rams of each BRAM which may be promoted to the next larger BRAM
+     */
+    private void addMinTempLUT(ShapeHistogram.Cursor rams, RAMType[] lutrams, int[] lutramSlots, RAMType[] chain, int[] chainSlots, RunQueue[] queues){
+        LogicalRAM first = logicRAMList.get(rams.first());
+        LogicalRAM last = logicRAMList.get(rams.last());
+        RAMType smallest = chain[chain.length - 1];
+        long step = (long) last.peekSize(smallest) * smallest.getLutRatio();
+        for (RAMType lutram : lutrams) {
+            int lutramSize = first.peekSize(lutram);
+            if (lutramSize < 16) step = Math.min(step, (long) lutramSize * lutram.getLutRatio());
+        }
 
-            // Generate the second largest BRAM from the largest one until the current limit reached
+        // Least temporal LUT which makes one of the rams checked by the placement loop ready
+        long need = Long.MAX_VALUE;
+        for (int t = 0; t < lutrams.length; t++) {
+            int lutramSize = first.peekSize(lutrams[t]);
+            if (lutramSize <= 16) need = Math.min(need, resource.neededTempLUT(lutramSlots[t], lutramSize));
+        }
+        for (int level = chain.length == 1 ? 0 : 1; level < chain.length; level++) {
+            need = Math.min(need, resource.neededTempLUT(chainSlots[level], last.peekSize(chain[level])));
+        }
+        for (int level = 1; level < chain.length; level++) {
+            if (queues[level].isEmpty()) continue;
+            RAMType promoteType = chain[level - 1];
+            need = Math.min(need, resource.neededTempLUT(chainSlots[level - 1], logicRAMList.get(queues[level].peek()).peekSize(promoteType)));
+        }
+        long steps = Math.max(1, (need + step - 1) / step);
+        addTempLUT((int) Math.min(steps * step, Integer.MAX_VALUE), "fallback");
+    }
 
-            // If capacity increases, we can even try to replace the second largest RAM with the largest RAM implementation
-            Queue<LogicalRAM> secondLargestRAM = new LinkedList<>();
+    /**
+     * Add temporal LUT to the resource and count the increase
+     * @param amount the LUT to be added
+     * @param phase the placement phase, recorded in {@link TempLUTEvent}
+     */
+    private void addTempLUT(int amount, String phase){
+        resource.addTempLUT(amount);
+        if (amount == 0) return;
+        tempLUTSteps++;
+        tempLUTAdded += amount;
+        TempLUTEvent event = new TempLUTEvent();
+        if (event.shouldCommit()) {
+            event.circuit = id;
+            event.phase = phase;
+            event.amount = amount;
+            event.tempLUT = resource.tempLUT;
+            event.commit();
+        }
+    }
 
-            while(resource.ready(circuitRAM.ramTypeList.get(1)) && unparsedRecord.size() > 0){
-                LogicalRAM ram = unparsedRecord.getLast(); // Get the element with largest size
-                // Peek the size of this element as if implemented in such type of RAM
-                if (!resource.ready(circuitRAM.ramTypeList.get(1),  ram.peekSize(circuitRAM.ramTypeList.get(1)))) break;
-                ram.parse(circuitRAM.ramTypeList.get(1));
-                resource.addLUT(ram.additionalLUT);
-                resource.addRAM(ram.type, ram.serial * ram.parallel);
-                secondLargestRAM.offer(ram); // Record the second largest from the largest to the smallest
-                unparsedRecord.removeLast();
-            }
+    /**
+     * Record the counters and the final resource usage in the event
+     */
+    private void fillEvent(CircuitMappingEvent event){
+        event.circuit = id;
+        event.typeCount = ramTypeList.size();
+        event.ramCount = logicRAMList.size();
+        event.loopIterations = loopIterations;
+        event.tempLUTSteps = tempLUTSteps;
+        event.tempLUTAdded = tempLUTAdded;
+        event.reparsed = reparsed;
+        event.lutRequired = resource.getLUTRequired();
+        StringBuilder sb = new StringBuilder();
+        for (RAMType type : resource.getTypes()) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(type.getId()).append(':').append(resource.getRAMCount(type)).append('/')
+            .append(resource.getLUTRequired() / type.getLutRatio());
+        }
+        event.utilization = sb.toString();
+        event.totalArea = resource.getTotalArea();
+    }
 
-            resource.releaseTempLUT();
+    /**
+     * Get the LUT required after some rams are placed with {@link #placeForced}
+     */
+    private long lutAfterForced(int slot, int size, int lutPerRAM, int number){
+        return resource.getLUTRequired() + resource.forcedTempLUT(slot, size, lutPerRAM, number) + (long) number * lutPerRAM;
+    }
 
-            // Generate LUTRAM from the logical RAM from least size, and produce second largest BRAM if capacity increases
+    /**
+     * Implement a run of rams with the same shape with the specified RAMType, and record the resource usage
+     * @param order index of the rams in this circuit
+     * @param from position of the first ram of the run in {@code order}
+     * @param count number of rams in the run
+     * @param type the RAMType in use
+     * @param slot slot of the type in the organizer
+     * @param lutPerBlock LUT used by each physical RAM besides the additional LUT
+     */
+    private void placeRun(int[] order, int from, int count, RAMType type, int slot, int lutPerBlock){
+        int first = order[from];
+        logicRAMList.get(first).parse(type, placement, first);
+        for (int p = from + 1; p < from + count; p++) {
+            placement.copy(first, order[p]);
+        }
+        int blocks = placement.getBlocks(first);
+        resource.addLUT(count * (placement.additionalLUT[first] + blocks * lutPerBlock));
+        resource.addRAM(slot, count * blocks);
+    }
 
-            while(unparsedRecord.size() > 0){
+    /**
+     * A FIFO queue of runs of rams. The rams of each run are polled from the highest position,
+     * which keeps the order of the rams placed one by one from the tail of a sequence.
+     */
+    private static class RunQueue {
+        private final int[] order;
+        private int[] runFrom = new int[8], runCount = new int[8];
+        private int head = 0, tail = 0;
 
-                boolean ramParsed = false; 
-                // If this flag is false after the loop block, this means all the resources
-                // runs out. So we need to allocate some more LUT for this circuit (wastage)
+        RunQueue(int[] order){
+            this.order = order;
+        }
 
-                // parse a LUTRAM
-                if(resource.ready(circuitRAM.ramTypeList.get(2), unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(2))) && 
-                unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(2)) <= 16) {
-                    // When LUT allocation
-                    LogicalRAM ram = unparsedRecord.removeFirst();
-                    ram.parse(circuitRAM.ramTypeList.get(2));
-                    resource.addLUT(ram.additionalLUT);
-                    resource.addRAM(ram.type, ram.serial * ram.parallel);
-                    resource.addLUT(ram.serial * ram.parallel * MemoryCAD.LOGICBLOCKLUT);
-                    ramParsed = true;
-                }
+        boolean isEmpty(){
+            return head == tail;
+        }
 
-                // Try to replace the second largest RAM with the largest one
-
-                while (secondLargestRAM.size() > 0 &&
-                resource.ready(circuitRAM.ramTypeList.get(0), 
-                secondLargestRAM.peek().peekSize(circuitRAM.ramTypeList.get(0)))){ // The element with largest size
-                    LogicalRAM ram = secondLargestRAM.poll();
-                    // Remove the related resource usage record
-                    resource.addLUT(-ram.additionalLUT);
-                    resource.addRAM(ram.type, - ram.serial * ram.parallel);
-                    // Parse the ram again with the largest RAM type
-                    ram.parse(circuitRAM.ramTypeList.get(0));
-                    resource.addLUT(ram.additionalLUT);
-                    resource.addRAM(ram.type, ram.serial * ram.parallel);
-                    // No need to operate unparsedRecord list
-                    ramParsed = true;
-                }
-                // Try to generate second largest RAMs
-                
-                while(resource.ready(circuitRAM.ramTypeList.get(1)) && unparsedRecord.size() > 0){
-                    LogicalRAM ram = unparsedRecord.getLast(); // Get the element with largest size
-                    // Peek the size of this element as if implemented in such type of RAM
-                    if (!resource.ready(circuitRAM.ramTypeList.get(1),  ram.peekSize(circuitRAM.ramTypeList.get(1)))) break;
-                    ram.parse(circuitRAM.ramTypeList.get(1));
-                    resource.addLUT(ram.additionalLUT);
-                    resource.addRAM(ram.type, ram.serial * ram.parallel);
-                    secondLargestRAM.offer(ram); // Record the second largest from the largest to the smallest
-                    unparsedRecord.removeLast();
-                    ramParsed = true;
-                }
-                
-                if (ramParsed == false){ // Allocate some temporal LUT so that the program will not stuck
-                    int lutTemp = unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(2)) * circuitRAM.ramTypeList.get(2).getLutRatio();
-                    if(unparsedRecord.getFirst().peekSize(circuitRAM.ramTypeList.get(2)) >= 16) lutTemp = Integer.MAX_VALUE; // Not taken
-                    int bramTemp = unparsedRecord.getLast().peekSize(circuitRAM.ramTypeList.get(1)) * circuitRAM.ramTypeList.get(1).getLutRatio();
-                    int minTempLUTIncrease = lutTemp > bramTemp ? bramTemp : lutTemp;
-                    resource.addTempLUT(minTempLUTIncrease);
-                    // We can add a little bit more TempLUT, b/c we will clean the unused tempLUT anyway
-                }
+        void offer(int from, int count){
+            if (tail == runFrom.length) {
+                runFrom = Arrays.copyOf(runFrom, tail * 2);
+                runCount = Arrays.copyOf(runCount, tail * 2);
             }
-            break;
-            case 0:
-            throw new RuntimeException("No valid input RAM type");
-            default:
-            throw new RuntimeException("At most three types of RAM is supported");
+            runFrom[tail] = from;
+            runCount[tail] = count;
+            tail++;
         }
 
-        resource.releaseTempLUT(); // try to release some of the tempLUT.
+        /**
+         * Get the next ram to be polled
+         */
+        int peek(){
+            return order[runFrom[head] + runCount[head] - 1];
+        }
 
-        return circuitRAM;
+        /**
+         * Get the number of rams left in the run at the head
+         */
+        int peekRun(){
+            return runCount[head];
+        }
+
+        /**
+         * Poll rams of the run at the head
+         * @return position in {@code order} of the rams polled
+         */
+        int poll(int count){
+            runCount[head] -= count;
+            int from = runFrom[head] + runCount[head];
+            if (runCount[head] == 0) head++;
+            return from;
+        }
     }
 }
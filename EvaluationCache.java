@@ -0,0 +1,390 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The class {@code EvaluationCache} remembers the mapping result of (circuit, architecture) pairs
+ * across runs, so repeated and overlapping sweeps only map the pairs they have not seen.
+ * <p>
+ * A pair is identified by the circuit id, the checksum of the benchmark inputs, the parameters of
+ * every RAMType of the architecture (size, widths, LUT ratio and LUT usage, so the LUTRAM ratio is
+ * included), {@link MemoryCAD#LOGICBLOCKLUT} and the version of the mapping algorithm. These are
+ * hashed into two independent 64-bit keys, one to find the entry and one to check it. The types are
+ * taken in the order {@link CircuitRAM} places them, from the largest size, so the same architecture
+ * given in another order is the same entry. The RAM counts are kept in this order as well.
+ * <p>
+ * The results are appended to a log file. In memory, the most recently used entries are kept in
+ * an open-addressing hash index, the least recently used one is evicted when the index is full.
+ * When the cache is opened, the log is replayed into the index, and the log is rewritten with the
+ * live entries only if most of its records are obsolete: overwritten, evicted, or stale, i.e. of
+ * other benchmark inputs or of another version of the mapping algorithm.
+ * <p>
+ * A log starts with a header of {@code MAGIC} and the version of the format. A non-empty file
+ * without this header is never written, so a mistyped path cannot destroy another file.
+ * <p>
+ * Record layout (little endian): key, check key, generation (the hash of the benchmark checksum and
+ * the algorithm version), area, number of types, the RAM count of each type, and the CRC32C of the
+ * record. A torn record at the end of the log is dropped.
+ */
+public class EvaluationCache implements Closeable {
+
+    public static final String DEFAULT_FILE = "evaluation.cache";
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    private static final int MAGIC = 0x48434556; // "VECH"
+    private static final int VERSION = 3;
+    private static final int ALGORITHM_VERSION = 2; // Increase when the mapping result changes
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_TYPES = 255;
+
+    protected final File file;
+    protected final long checksum;
+    protected final long generation; // tag of the records of these inputs and this algorithm
+    protected final int capacity;
+
+    // Index, slot of the hash table to entry id
+    private final int[] table;
+    private final int mask;
+    // Entries, with a doubly linked list from the most recently used one
+    private final long[] key, check, area;
+    private final int[][] counts;
+    private final int[] prev, next;
+    private int head = -1, tail = -1;
+    private int size = 0;
+
+    private OutputStream log;
+    private long records = 0; // records of this generation in the log
+    private long stale = 0;   // records of other generations in the log
+    private long hits = 0, misses = 0;
+
+    private EvaluationCache(File file, long checksum, int capacity){
+        this.file = file;
+        this.checksum = checksum;
+        this.generation = mix(mix(checksum ^ 0x5851F42D4C957F2DL) ^ ((long) MemoryCAD.LOGICBLOCKLUT << 32 | ALGORITHM_VERSION));
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2; // load factor at most 1/2
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+        Arrays.fill(table, -1);
+        this.key = new long[capacity];
+        this.check = new long[capacity];
+        this.area = new long[capacity];
+        this.counts = new int[capacity][];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+    }
+
+    /**
+     * Open the cache in a log file, the file is created if it does not exist or is empty
+     * @param file the log file
+     * @param checksum checksum of the benchmark inputs, see {@link Benchmark#getChecksum()}
+     * @param capacity number of entries kept in memory
+     * @return the cache
+     * @throws IOException if the log cannot be read or written, or if the file is not an evaluation cache
+     */
+    public static EvaluationCache open(File file, long checksum, int capacity) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        EvaluationCache cache = new EvaluationCache(file, checksum, capacity);
+        long validBytes = cache.replay();
+        // Rewrite a new or old format log, or a log mostly made of obsolete records
+        if (validBytes < HEADER_BYTES || cache.stale > cache.records || cache.stale + cache.records > 2L * cache.size + 1024) {
+            cache.compact();
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes); // drop the torn record
+            }
+            cache.log = new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16);
+        }
+        return cache;
+    }
+
+    /**
+     * Get the area of a circuit with an architecture
+     * @param circuit id of the circuit
+     * @param types the RAM types of the architecture
+     * @return the area, -1 if not in the cache
+     */
+    public synchronized long get(int circuit, List<RAMType> types){
+        int[] order = canonicalOrder(types);
+        int entry = find(hash(circuit, types, order, 0x9E3779B97F4A7C15L), hash(circuit, types, order, 0xC2B2AE3D27D4EB4FL));
+        if (entry < 0) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        touch(entry);
+        return area[entry];
+    }
+
+    /**
+     * Get the RAM count of each type of a circuit with an architecture
+     * @param circuit id of the circuit
+     * @param types the RAM types of the architecture
+     * @return the RAM count in the order of {@code types}, null if not in the cache
+     */
+    public synchronized int[] getCounts(int circuit, List<RAMType> types){
+        int[] order = canonicalOrder(types);
+        int entry = find(hash(circuit, types, order, 0x9E3779B97F4A7C15L), hash(circuit, types, order, 0xC2B2AE3D27D4EB4FL));
+        if (entry < 0) return null;
+        touch(entry);
+        int[] ramCount = new int[order.length];
+        for (int t = 0; t < order.length; t++) {
+            ramCount[order[t]] = counts[entry][t];
+        }
+        return ramCount;
+    }
+
+    /**
+     * Record the mapping result of a circuit with an architecture
+     * @param circuit id of the circuit
+     * @param types the RAM types of the architecture
+     * @param totalArea the total area
+     * @param ramCount the RAM count in the order of {@code types}
+     * @throws RuntimeException if the log cannot be written
+     */
+    public synchronized void put(int circuit, List<RAMType> types, long totalArea, int[] ramCount){
+        if (types.size() > MAX_TYPES) return;
+        int[] order = canonicalOrder(types);
+        long k = hash(circuit, types, order, 0x9E3779B97F4A7C15L);
+        long c = hash(circuit, types, order, 0xC2B2AE3D27D4EB4FL);
+        int[] sorted = new int[order.length];
+        for (int t = 0; t < order.length; t++) {
+            sorted[t] = ramCount[order[t]];
+        }
+        insert(k, c, totalArea, sorted);
+        try {
+            writeRecord(log, k, c, generation, totalArea, sorted);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Cannot write the evaluation cache", ioe);
+        }
+        records++;
+    }
+
+    /**
+     * Get a one-line summary of the cache usage
+     * @return the summary
+     */
+    public synchronized String getReport(){
+        return String.format("Evaluation cache %s: %d hits, %d misses, %d entries in memory", file, hits, misses, size);
+    }
+
+    /**
+     * Write the buffered records to the log and close it
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Read the records of this generation into the index, and count the stale ones
+     * @return the length of the valid part of the log, 0 if the log is empty or of another version
+     * @throws IOException if the file cannot be read or is not an evaluation cache
+     */
+    private long replay() throws IOException {
+        if (!file.exists() || file.length() == 0) return 0;
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is larger than 2GB");
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < 4 || buf.getInt() != MAGIC) {
+            throw new IOException(file + " is not an evaluation cache, it is left untouched. Give another file to " + SweepEngine.CACHE_OPTION);
+        }
+        if (buf.limit() < HEADER_BYTES || buf.getInt() != VERSION) return 0;
+        CRC32C crc = new CRC32C();
+        while (buf.remaining() >= 8 * 4 + 1 + 4) {
+            int start = buf.position();
+            long k = buf.getLong();
+            long c = buf.getLong();
+            long g = buf.getLong();
+            long totalArea = buf.getLong();
+            int typeNum = buf.get() & 0xFF;
+            if (buf.remaining() < 4 * typeNum + 4) break;
+            int[] ramCount = new int[typeNum];
+            for (int t = 0; t < typeNum; t++) {
+                ramCount[t] = buf.getInt();
+            }
+            ByteBuffer record = buf.duplicate();
+            record.position(start).limit(buf.position());
+            crc.reset();
+            crc.update(record);
+            if (buf.getInt() != (int) crc.getValue()) {
+                buf.position(start);
+                break;
+            }
+            if (g == generation) {
+                insert(k, c, totalArea, ramCount);
+                records++;
+            } else {
+                stale++; // never found with these inputs, not worth a slot of the index
+            }
+        }
+        return buf.position();
+    }
+
+    /**
+     * Rewrite the log with the entries in memory, from the least recently used one, or create it
+     */
+    private void compact() throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION);
+                out.write(header.array());
+                for (int entry = tail; entry >= 0; entry = prev[entry]) {
+                    writeRecord(out, key[entry], check[entry], generation, area[entry], counts[entry]);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete(); // no effect once moved
+        }
+        records = size;
+        stale = 0;
+        log = new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16);
+    }
+
+    private static void writeRecord(OutputStream out, long k, long c, long g, long totalArea, int[] ramCount) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(8 * 4 + 1 + 4 * ramCount.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(k).putLong(c).putLong(g).putLong(totalArea).put((byte) ramCount.length);
+        for (int count : ramCount) {
+            record.putInt(count);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        out.write(record.array());
+    }
+
+    /**
+     * Get the order in which {@link CircuitRAM} places the types: from the largest size, the types
+     * of the same size keeping their order
+     * @return the index in {@code types} of each type, in this order
+     */
+    private static int[] canonicalOrder(List<RAMType> types){
+        int[] order = new int[types.size()];
+        for (int t = 0; t < order.length; t++) {
+            int size = types.get(t).getSize();
+            int p = t;
+            while (p > 0 && types.get(order[p - 1]).getSize() < size) {
+                order[p] = order[p - 1];
+                p--;
+            }
+            order[p] = t;
+        }
+        return order;
+    }
+
+    /**
+     * Hash the identity of a (circuit, architecture) pair with a seed, the types taken in the given order
+     */
+    private long hash(int circuit, List<RAMType> types, int[] order, long seed){
+        long h = mix(seed ^ checksum);
+        h = mix(h ^ circuit);
+        h = mix(h ^ ((long) MemoryCAD.LOGICBLOCKLUT << 32 | ALGORITHM_VERSION));
+        h = mix(h ^ types.size());
+        for (int t : order) {
+            RAMType type = types.get(t);
+            h = mix(h ^ ((long) type.getSize() << 32 | type.getLutRatio() & 0xFFFFFFFFL));
+            h = mix(h ^ ((long) type.getMinWidth() << 32 | type.getMaxWidth() & 0xFFFFFFFFL));
+            h = mix(h ^ type.getLutImpl());
+        }
+        return h;
+    }
+
+    /**
+     * The finalizer of SplitMix64
+     */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private int find(long k, long c){
+        for (int slot = (int) k & mask; table[slot] >= 0; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (key[entry] == k && check[entry] == c) return entry;
+        }
+        return -1;
+    }
+
+    private void insert(long k, long c, long totalArea, int[] ramCount){
+        int entry = find(k, c);
+        if (entry < 0) {
+            if (size == capacity) {
+                entry = tail;
+                remove(entry);
+            } else {
+                entry = size++;
+                prev[entry] = next[entry] = -1;
+            }
+            key[entry] = k;
+            check[entry] = c;
+            int slot = (int) k & mask;
+            while (table[slot] >= 0) slot = (slot + 1) & mask;
+            table[slot] = entry;
+        }
+        area[entry] = totalArea;
+        counts[entry] = ramCount;
+        touch(entry);
+    }
+
+    /**
+     * Remove an entry from the hash table and the list, with backward shift deletion
+     */
+    private void remove(int entry){
+        int slot = (int) key[entry] & mask;
+        while (table[slot] != entry) slot = (slot + 1) & mask;
+        int hole = slot;
+        for (int probe = (hole + 1) & mask; table[probe] >= 0; probe = (probe + 1) & mask) {
+            int home = (int) key[table[probe]] & mask;
+            // Move the probed entry back if its home is not in (hole, probe]
+            if (((probe - home) & mask) >= ((probe - hole) & mask)) {
+                table[hole] = table[probe];
+                hole = probe;
+            }
+        }
+        table[hole] = -1;
+        unlink(entry);
+    }
+
+    /**
+     * Move an entry to the head of the list
+     */
+    private void touch(int entry){
+        if (head == entry) return;
+        unlink(entry);
+        prev[entry] = -1;
+        next[entry] = head;
+        if (head >= 0) prev[head] = entry;
+        head = entry;
+        if (tail < 0) tail = entry;
+    }
+
+    private void unlink(int entry){
+        int p = prev[entry], n = next[entry];
+        if (p >= 0) next[p] = n;
+        else if (head == entry) head = n;
+        if (n >= 0) prev[n] = p;
+        else if (tail == entry) tail = p;
+        prev[entry] = next[entry] = -1;
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class {@code EvaluationServer} keeps the benchmark loaded and evaluates architectures on request,
+ * so a script can evaluate many architectures without starting a JVM and loading the inputs each time.
+ * <p>
+ * The server listens on a localhost TCP port. The protocol is line based: each request is a line and gets
+ * a response line. The connections are served concurrently, the requests of a connection in order.
+ * <ul>
+ * <li>An architecture, in the form of a line of the description file of {@link BatchEvaluator}, e.g.
+ * {@code LUTRAM 1 640 10 20 20; BRAM 2 8192 32 100}. The response is
+ * {@code OK mean n area_0 .. area_n-1 t count_0_0 .. count_n-1_t-1}: the geometric mean area, the area
+ * of each of the n circuits, and the physical RAM count of each circuit and each of the t types in the
+ * order of the request.</li>
+ * <li>{@code INFO}: {@code OK circuits logicalRAMs}</li>
+ * <li>{@code PING}: {@code OK}</li>
+ * <li>{@code QUIT}: closes the connection</li>
+ * <li>{@code SHUTDOWN}: {@code OK}, then the server stops</li>
+ * </ul>
+ * An invalid request gets {@code ERR message}.
+ * <p>
+ * When the server is stopped with {@code SHUTDOWN}, a {@link RunReport} with the number of requests and
+ * architectures evaluated is written in ./output_server.
+ */
+public class EvaluationServer {
+
+    public static final String PORT_OPTION = "--port";
+    public static final int DEFAULT_PORT = 7878;
+
+    protected final SweepEngine engine;
+    protected final int circuitNum;
+    protected final int ramNum;
+    protected final ServerSocket serverSocket;
+    protected final ExecutorService connections;
+    // Counters of the served requests, recorded in the report
+    protected final AtomicLong requests = new AtomicLong();
+    protected final AtomicLong architectures = new AtomicLong();
+    protected final AtomicLong errors = new AtomicLong();
+    protected final AtomicLong evaluationTime = new AtomicLong(); // in nanoseconds, summed over the connections
+
+    /**
+     * Generate a server over an engine, listening on a localhost port
+     * @param engine the engine of the loaded benchmark
+     * @param benchmark the loaded benchmark
+     * @param port the port, 0 for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    public EvaluationServer(SweepEngine engine, Benchmark benchmark, int port) throws IOException {
+        this.engine = engine;
+        this.circuitNum = benchmark.getCircuitNum();
+        this.ramNum = benchmark.getRAMNum();
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.connections = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "evaluation-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args){
+        try {
+            int port = DEFAULT_PORT;
+            int threads = 0;
+            List<String> positional = SweepEngine.positionalArgs(args);
+            try {
+                threads = SweepEngine.parseThreads(args);
+                for (int i = 0; i < positional.size(); i++) {
+                    if (positional.get(i).equals(PORT_OPTION)) port = Integer.parseInt(positional.get(++i));
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e){
+                System.err.println(threads == 0 ? "The thread count must be a positive integer!" : "The port must be an integer!");
+                return;
+            }
+
+            RunReport report = new RunReport("EvaluationServer");
+            Benchmark benchmark = Benchmark.load();
+            System.out.println(benchmark.getLoadReport());
+            report.putBenchmark(benchmark);
+            SweepEngine engine = new SweepEngine(benchmark.getRAMRecords(), benchmark.getLogicBlockCount(), threads);
+            engine.setCache(SweepEngine.openCache(args, benchmark));
+
+            // Warm up the mapping code before the first request
+            long startTime = System.nanoTime();
+            int[][] ramCount = new int[benchmark.getCircuitNum()][MemoryCAD.getTypeSet().size()];
+            for (int round = 0; round < 3; round++) {
+                engine.evaluateDetail(MemoryCAD.getTypeSet(), new long[benchmark.getCircuitNum()], ramCount);
+            }
+            long warmupTime = System.nanoTime() - startTime;
+            System.out.printf("Warmed up in %.1fms%n", warmupTime / 1e6);
+            report.put("warmupTimeMs", warmupTime / 1e6);
+
+            EvaluationServer server = new EvaluationServer(engine, benchmark, port);
+            System.out.println("Listening on " + server.serverSocket.getInetAddress().getHostAddress() + ":" + server.serverSocket.getLocalPort());
+            long serveStart = System.nanoTime();
+            server.serve();
+            report.put("port", server.serverSocket.getLocalPort());
+            report.put("serveTimeMs", (System.nanoTime() - serveStart) / 1e6);
+            server.putStatistics(report);
+            engine.shutdown();
+
+            // Make an output dir with timestamp
+            SimpleDateFormat format = new SimpleDateFormat("yy_MM_dd_HH_mm_ss");
+            File dir = new File("output_server");
+            if (!dir.isDirectory()) {
+                dir.mkdir();
+            }
+            dir = new File(dir, format.format(new Date()));
+            dir.mkdir();
+            report.write(new File(dir, RunReport.FILE_NAME));
+        }catch (IOException ioe){
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Accept the connections until the server is shut down
+     * @throws IOException if the server socket fails
+     */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handle(socket));
+            }
+        } catch (SocketException se) {
+            if (!serverSocket.isClosed()) throw se; // otherwise closed by SHUTDOWN
+        } finally {
+            connections.shutdown();
+        }
+    }
+
+    /**
+     * Stop accepting connections, the requests being evaluated still get their response
+     */
+    public void shutdown(){
+        try {
+            serverSocket.close();
+        } catch (IOException ioe) {
+            // Closed anyway
+        }
+    }
+
+    /**
+     * Add the counters of the served requests to a report
+     * @param report the report of the run
+     */
+    public void putStatistics(RunReport report){
+        report.put("threads", engine.getThreads());
+        report.put("requests", requests.get());
+        report.put("errors", errors.get());
+        report.put("architectures", architectures.get());
+        report.put("evaluationTimeMs", evaluationTime.get() / 1e6);
+        report.put("circuitsMapped", engine.getMappedCount());
+        report.putRate("architecturesPerSecond", architectures.get(), evaluationTime.get());
+    }
+
+    private void handle(Socket socket){
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII))) {
+            s.setTcpNoDelay(true);
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                if (line.equalsIgnoreCase("QUIT")) break;
+                response.setLength(0);
+                boolean stop = respond(line, response);
+                writer.write(response.append('\n').toString());
+                writer.flush();
+                if (stop) {
+                    shutdown();
+                    break;
+                }
+            }
+        } catch (IOException ioe) {
+            // The client went away, nothing to answer
+        }
+    }
+
+    /**
+     * Build the response of a request
+     * @return true if the server should stop
+     */
+    private boolean respond(String request, StringBuilder response){
+        requests.incrementAndGet();
+        if (request.equalsIgnoreCase("PING")) {
+            response.append("OK");
+        } else if (request.equalsIgnoreCase("INFO")) {
+            response.append("OK ").append(circuitNum).append(' ').append(ramNum);
+        } else if (request.equalsIgnoreCase("SHUTDOWN")) {
+            response.append("OK");
+            return true;
+        } else {
+            List<RAMType> types;
+            try {
+                types = BatchEvaluator.parseArchitecture(request);
+            } catch (RuntimeException re) {
+                errors.incrementAndGet();
+                response.append("ERR ").append(re.getMessage());
+                return false;
+            }
+            long[] areas = new long[circuitNum];
+            int[][] ramCount = new int[circuitNum][types.size()];
+            double mean;
+            long startTime = System.nanoTime();
+            try {
+                mean = engine.evaluateDetail(types, areas, ramCount);
+            } catch (RuntimeException re) {
+                errors.incrementAndGet();
+                response.append("ERR ").append(re.getMessage());
+                return false;
+            }
+            evaluationTime.addAndGet(System.nanoTime() - startTime);
+            architectures.incrementAndGet();
+            response.append("OK ").append(mean).append(' ').append(circuitNum);
+            for (long area : areas) {
+                response.append(' ').append(area);
+            }
+            response.append(' ').append(types.size());
+            for (int[] counts : ramCount) {
+                for (int count : counts) {
+                    response.append(' ').append(count);
+                }
+            }
+        }
+        return false;
+    }
+}
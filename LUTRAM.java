@@ -6,6 +6,7 @@ public class LUTRAM extends RAMType {
     protected int maxWidth;
     protected int lutRatio;
     protected int lutImpl;
+    protected long tileArea;
 
     public LUTRAM(int id, int size, int minWidth, int maxWidth, int lutRatio){
         this.id = id;
@@ -13,6 +14,8 @@ public class LUTRAM extends RAMType {
         this.minWidth = minWidth;
         this.maxWidth = maxWidth;
         this.lutRatio = lutRatio;
+        // 1 out of lutRatio logic blocks can implement LUTRAM, simply average the area usage
+        this.tileArea = (35000L * lutRatio / MemoryCAD.LOGICBLOCKLUT + 5000) / lutRatio * MemoryCAD.LOGICBLOCKLUT;
     }
 
     @Override
@@ -44,5 +47,10 @@ public class LUTRAM extends RAMType {
     public int getLutImpl() {
         return MemoryCAD.LOGICBLOCKLUT;
     }
+
+    @Override
+    public long getTileArea() {
+        return tileArea;
+    }
     
 }
@@ -1,18 +1,19 @@
+/**
+ * The class {@code LogicalRAM} is the specification of a logical RAM in a circuit. It is
+ * immutable, the mapping result is recorded in a {@link RAMPlacement}.
+ */
 public class LogicalRAM {
-    protected int id;
-    protected RAMMode mode;
-    protected RAMType type;
-    protected int w, d;
-    protected int serial, parallel;
-    protected int physicalWidth, physicalDepth;
-    protected int additionalLUT;
-    // protected int size;
+    protected final int id;
+    protected final RAMMode mode;
+    protected final int w, d;
+    protected final int shape; // id of the (mode, depth, width) tuple in ShapeTable
 
     public LogicalRAM(int id, RAMMode mode, int width, int depth){
         this.id = id;
         this.mode = mode;
         this.w = width;
         this.d = depth;
+        this.shape = ShapeTable.intern(mode, depth, width);
     }
     
     /**
@@ -22,42 +23,86 @@ public class LogicalRAM {
      * @return the estimated size
      */
     public int peekSize(RAMType type){
+        ShapeTable table = type.getShapeTable();
+        if (table.contains(shape)) return table.blocks[shape];
 
-        // Allocate physical RAM according to the type, mode and width
-
-        // Satisfy depth first, b/c linking RAM parallel has no penalty
-        int selectedWidth = type.getMinWidth();
-        while (selectedWidth * 2 <= type.getMaxWidth() * mode.getWidthUtilization() && type.getSize() / (selectedWidth * 2) >= this.d){
-            selectedWidth *= 2;
-        }
-        int physicalWidth = selectedWidth;
-        int physicalDepth = type.getSize() / selectedWidth;
+        int physicalWidth = selectWidth(mode, d, type.getSize(), type.getMinWidth(), type.getMaxWidth());
+        int physicalDepth = type.getSize() / physicalWidth;
         
         int parallel = ceilDiv(this.w, physicalWidth);
         int serial = ceilDiv(this.d, physicalDepth);
         return parallel * serial;
     }
 
-    public void parse(RAMType type){
-        this.type = type;
+    /**
+     * Peek the additional LUT of this ram implemented by the specified RAMType
+     * @param type
+     * @return the additional LUT
+     */
+    public int peekLUT(RAMType type){
+        ShapeTable table = type.getShapeTable();
+        if (table.contains(shape)) return table.additionalLUT[shape];
 
-        // Allocate physical RAM according to the type, mode and width
+        int physicalWidth = selectWidth(mode, d, type.getSize(), type.getMinWidth(), type.getMaxWidth());
+        int physicalDepth = type.getSize() / physicalWidth;
+        return additionalLUT(mode, ceilDiv(this.d, physicalDepth), ceilDiv(this.w, physicalWidth), type.getLutImpl());
+    }
 
-        // Satisfy depth first, b/c linking RAM parallel has no penalty
-        int selectedWidth = type.getMinWidth();
-        
-        while (selectedWidth * 2 <= type.getMaxWidth() * mode.getWidthUtilization() && type.getSize() / (selectedWidth * 2) >= this.d){
-            selectedWidth *= 2;
+    /**
+     * Implement this ram with the specified RAMType and record the result in the placement
+     * @param type the RAMType in use
+     * @param placement the placement of the circuit
+     * @param index index of this ram in the circuit
+     */
+    public void parse(RAMType type, RAMPlacement placement, int index){
+        ShapeTable table = type.getShapeTable();
+        if (table.contains(shape)) {
+            int physicalWidth = table.physicalWidth[shape];
+            placement.set(index, type, table.serial[shape], table.parallel[shape], physicalWidth,
+            type.getSize() / physicalWidth, table.additionalLUT[shape]);
+            return;
         }
-        this.physicalWidth = selectedWidth;
-        this.physicalDepth = type.getSize() / selectedWidth;
+
+        int physicalWidth = selectWidth(mode, d, type.getSize(), type.getMinWidth(), type.getMaxWidth());
+        int physicalDepth = type.getSize() / physicalWidth;
         
-        this.parallel = ceilDiv(this.w, this.physicalWidth);
-        this.serial = ceilDiv(this.d, this.physicalDepth);
+        int parallel = ceilDiv(this.w, physicalWidth);
+        int serial = ceilDiv(this.d, physicalDepth);
+        placement.set(index, type, serial, parallel, physicalWidth, physicalDepth, additionalLUT(mode, serial, parallel, type.getLutImpl()));
+    }
+
+    /**
+     * Select the physical width of a RAM. Satisfy depth first, b/c linking RAM parallel has no
+     * penalty: the width is doubled from the minimum width as long as the physical RAM stays
+     * deep enough and the width fits the mode. The result is the largest
+     * {@code minWidth * 2^k} within both limits, found with a leading-zero count.
+     * @param mode mode of the logical RAM
+     * @param depth depth of the logical RAM
+     * @param size size of the physical RAM in bits
+     * @param minWidth minimum width of the physical RAM
+     * @param maxWidth maximum width of the physical RAM
+     * @return the selected physical width
+     */
+    public static int selectWidth(RAMMode mode, int depth, int size, int minWidth, int maxWidth){
+        int widthLimit = (int) (maxWidth * mode.getWidthUtilization());
+        // size / width >= depth  <=>  width <= size / depth
+        int depthLimit = depth > 0 ? size / depth : Integer.MAX_VALUE;
+        int steps = Math.min(widthLimit, depthLimit) / minWidth;
+        if (steps < 1) return minWidth;
+        return minWidth << (31 - Integer.numberOfLeadingZeros(steps));
+    }
 
-        // Resolve additional LUT in a line (serial)
+    /**
+     * Resolve additional LUT in a line (serial)
+     * @param mode mode of the logical RAM
+     * @param serial number of physical RAM linked in serial
+     * @param parallel number of physical RAM linked in parallel
+     * @param lutImpl LUT used to implement one physical RAM
+     * @return the additional LUT
+     */
+    public static int additionalLUT(RAMMode mode, int serial, int parallel, int lutImpl){
         int decLUT, muxLUT;
-        switch(this.serial){
+        switch(serial){
             case 1: // No serial
                 decLUT = 0;
                 muxLUT = 0;
@@ -67,13 +112,14 @@ public class LogicalRAM {
                 muxLUT = 1;
                 break;
             default: 
-                decLUT = this.serial;
-                muxLUT = ceilDiv((this.serial-1), 3);
+                decLUT = serial;
+                muxLUT = ceilDiv((serial-1), 3);
         }
-        this.additionalLUT = (decLUT + muxLUT) * this.parallel + this.serial * this.parallel * this.type.getLutImpl();
-        if (this.serial >= 2 && this.mode == RAMMode.TRUEDUALPORT){
-            this.additionalLUT += 2;
+        int additionalLUT = (decLUT + muxLUT) * parallel + serial * parallel * lutImpl;
+        if (serial >= 2 && mode == RAMMode.TRUEDUALPORT){
+            additionalLUT += 2;
         }
+        return additionalLUT;
     }
 
     /**
@@ -82,11 +128,9 @@ public class LogicalRAM {
      * @param y
      * @return
      */
-    private static int ceilDiv(int x, int y){
+    static int ceilDiv(int x, int y){
         int result = x / y;
         if (x % y == 0) return result;
         return result + 1;
     }
 }
-
-
@@ -0,0 +1,169 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class {@code MapWriter} writes the mapping file of the circuits, one line per logical RAM in the
+ * format of map_example.txt:
+ * {@code circuit ram additionalLUT LW width LD depth ID ram S serial P parallel Type type Mode mode W physicalWidth D physicalDepth}.
+ * <p>
+ * The records are formatted straight into a reusable byte buffer and written through a
+ * {@link FileChannel} (or any channel) by a background thread, so the output of a circuit overlaps with the mapping
+ * of the next one. The circuits are written in the order they are given, and a circuit must not
+ * be modified after it is given to the writer.
+ */
+public class MapWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_RECORD = 256; // longest record, with every number at its longest
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] MODE_NAME = new byte[RAMMode.values().length][];
+    static {
+        MODE_NAME[RAMMode.ROM.ordinal()] = ascii("ROM");
+        MODE_NAME[RAMMode.SIMPLEDUALPORT.ordinal()] = ascii("SimpleDualPort");
+        MODE_NAME[RAMMode.SINGLEPORT.ordinal()] = ascii("SinglePort");
+        MODE_NAME[RAMMode.TRUEDUALPORT.ordinal()] = ascii("TrueDualPort");
+    }
+    private static final byte[] LW = ascii(" LW "), LD = ascii(" LD "), ID = ascii(" ID "), S = ascii(" S "),
+    P = ascii(" P "), TYPE = ascii(" Type "), MODE = ascii(" Mode "), W = ascii(" W "), D = ascii(" D ");
+
+    protected final WritableByteChannel channel;
+    protected final ExecutorService executor;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE); // used by the writer thread only
+    private volatile IOException error;
+
+    /**
+     * Open the mapping file, an existing file is overwritten
+     * @param file the mapping file
+     * @throws IOException if the file cannot be opened
+     */
+    public MapWriter(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Write the records to a channel, which is closed with this writer
+     * @param channel the channel of the mapping file
+     */
+    public MapWriter(WritableByteChannel channel){
+        this.channel = channel;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "map-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue the records of a mapped circuit to be written
+     * @param circuit the mapped circuit
+     */
+    public void write(CircuitRAM circuit){
+        executor.execute(() -> {
+            if (error != null) return;
+            try {
+                writeCircuit(circuit);
+            } catch (IOException ioe) {
+                error = ioe;
+            }
+        });
+    }
+
+    /**
+     * Write all the queued circuits and close the file
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting, the remaining circuits are still being written
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the mapping file", ie);
+        }
+        try {
+            if (error == null) flush();
+        } finally {
+            channel.close();
+        }
+        if (error != null) throw error;
+    }
+
+    private void writeCircuit(CircuitRAM circuit) throws IOException {
+        RAMPlacement placement = circuit.placement;
+        for (int i = 0; i < circuit.logicRAMList.size(); i++) {
+            if (buffer.remaining() < MAX_RECORD) flush();
+            LogicalRAM ram = circuit.logicRAMList.get(i);
+            putInt(circuit.id);
+            buffer.put((byte) ' ');
+            putInt(ram.id);
+            buffer.put((byte) ' ');
+            putInt(placement.additionalLUT[i]);
+            buffer.put(LW);
+            putInt(ram.w);
+            buffer.put(LD);
+            putInt(ram.d);
+            buffer.put(ID);
+            putInt(ram.id);
+            buffer.put(S);
+            putInt(placement.serial[i]);
+            buffer.put(P);
+            putInt(placement.parallel[i]);
+            buffer.put(TYPE);
+            putInt(placement.type[i].getId());
+            buffer.put(MODE);
+            buffer.put(MODE_NAME[ram.mode.ordinal()]);
+            buffer.put(W);
+            putInt(placement.physicalWidth[i]);
+            buffer.put(D);
+            putInt(placement.physicalDepth[i]);
+            buffer.put(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Put the decimal digits of an integer, as {@code %d} does
+     */
+    private void putInt(int value){
+        long v = value;
+        if (v < 0) {
+            buffer.put((byte) '-');
+            v = -v;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + v % 10));
+            v /= 10;
+        } while (v != 0);
+        // The digits are put from the least significant one, reverse them in place
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte b = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, b);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static byte[] ascii(String s){
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,13 +1,16 @@
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class MemoryCAD {
 
@@ -16,53 +19,24 @@ public class MemoryCAD {
     public static void main(String[] args){
         long startTime = System.nanoTime();
         try {
-            File file = new File("logical_rams.txt");
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            // Get total number of circuit
-            String line = reader.readLine();
-            Scanner scanner = new Scanner(line);
-            scanner.next(); // Skip useless word
-            int circuitNum = scanner.nextInt();
-            scanner.close();
-
-            // Generate the record list
-            ArrayList<LogicalRAM>[] ramRecordsList = new ArrayList[circuitNum];
-            for (int i = 0; i < circuitNum; i++) {
-                ramRecordsList[i] = new ArrayList<>();
-            }
-
-            reader.readLine(); // skip second line
-
-            while (reader.ready()) {
-                line = reader.readLine();
-                scanner = new Scanner(line);
-                int circuitId = scanner.nextInt();
-                int ramId = scanner.nextInt();
-                RAMMode mode = RAMMode.parseMode(scanner.next());
-                int depth = scanner.nextInt();
-                int width = scanner.nextInt();
-                scanner.close();
-                ramRecordsList[circuitId].add(new LogicalRAM(ramId, mode, width, depth));
+            int threads;
+            try {
+                threads = SweepEngine.parseThreads(args);
+            } catch (NumberFormatException e){
+                System.err.println("The thread count must be a positive integer!");
+                return;
             }
-            reader.close();
 
-            // Get the total logic block count of each circuit
-            int[] logicBlockCount = new int[circuitNum];
-            file = new File("logic_block_count.txt");
-            reader = new BufferedReader(new FileReader(file));
-            reader.readLine(); // skip the first line
-            while (reader.ready()) {
-                line = reader.readLine();
-                String[] lineSegment = line.split("\t");
-                logicBlockCount[Integer.parseInt(lineSegment[0])] = Integer.parseInt(lineSegment[1]);
-            }
-            reader.close();
+            RunReport report = new RunReport("MemoryCAD");
+            Benchmark benchmark = Benchmark.load();
+            System.out.println(benchmark.getLoadReport());
+            report.putBenchmark(benchmark);
+            int circuitNum = benchmark.getCircuitNum();
+            List<LogicalRAM>[] ramRecordsList = benchmark.getRAMRecords();
+            int[] logicBlockCount = benchmark.getLogicBlockCount();
 
             // Set RAM Type 
-            ArrayList<RAMType> typeSet = new ArrayList<>(3);
-            typeSet.add(new LUTRAM(1, 64 * 10, 10, 20, 2 * MemoryCAD.LOGICBLOCKLUT));
-            typeSet.add(new BRAM(2, 8192, 32, 10 * MemoryCAD.LOGICBLOCKLUT));
-            typeSet.add(new BRAM(3, 1024 * 128, 128, 300 * MemoryCAD.LOGICBLOCKLUT));
+            List<RAMType> typeSet = getTypeSet();
 
             // Map file name
             SimpleDateFormat format = new SimpleDateFormat("yy_MM_dd_HH_mm_ss");
@@ -75,43 +49,65 @@ public class MemoryCAD {
             dir = new File(dir, timestamp);
             dir.mkdir();
 
-            file = new File(dir, "map.txt");
-            PrintWriter writer = new PrintWriter(file);
-            // Start the execution
+            MapWriter mapWriter = new MapWriter(new File(dir, "map.txt"));
+            // Start the execution, the circuits are mapped concurrently and collected in circuit order
+            ForkJoinPool pool = new ForkJoinPool(threads);
             CircuitRAM[] circuits = new CircuitRAM[circuitNum];
+            long[] mappingTime = new long[circuitNum];
+            long mappingStart = System.nanoTime();
+            List<Future<CircuitRAM>> tasks = new ArrayList<>(circuitNum);
+            for (int i = 0; i < circuitNum; i++) {
+                final int circuit = i;
+                tasks.add(pool.submit(() -> {
+                    long circuitStart = System.nanoTime();
+                    CircuitRAM result = CircuitRAM.parseCircuit(circuit, logicBlockCount[circuit] * LOGICBLOCKLUT, ramRecordsList[circuit], typeSet);
+                    mappingTime[circuit] = System.nanoTime() - circuitStart;
+                    return result;
+                }));
+            }
             double accProduct = 1.;
             for (int i = 0; i < circuits.length; i++) {
-                System.out.println("Fitting circuit " + i);
-                circuits[i] = CircuitRAM.parseCircuit(i, logicBlockCount[i] * 10, ramRecordsList[i], typeSet);
-                System.out.println(circuits[i].resource);
-                for (String s : generateRecord(circuits[i])) {
-                    writer.println(s);
-                }
+                circuits[i] = join(tasks.get(i));
+                mapWriter.write(circuits[i]); // written in the background while the next circuits are mapped
+                // Multiply in circuit order, so the rounding does not depend on the threads
                 accProduct *= Math.pow((double) circuits[i].resource.getTotalArea(), 1 / (double) circuits.length);
             }
-            writer.close();
+            pool.shutdown();
+            mapWriter.close();
+            long mappingEnd = System.nanoTime();
             System.out.println("Average area usage (Geometric): " + accProduct);
             long runtime = System.nanoTime() - startTime;
             // Denote runtime in fixed point (x.3) notation.
-            int runtimeMs = (int) (runtime / 10000000);
+            long runtimeMs = runtime / 1000000;
             int runtimePoint = (int) ((runtime / 1000) % 1000);
-            System.out.println("Runtime: " + runtimeMs + "." + runtimePoint + "ms");
+            System.out.println(String.format("Runtime: %d.%03dms", runtimeMs, runtimePoint));
             // Print the stats of resource usage
-            file = new File(dir, "stats.csv");
-            writer = new PrintWriter(file);
+            StringBuilder stats = new StringBuilder();
+            String newLine = System.lineSeparator();
             // print the line title at first line in csv format
-            writer.println("Circuit #,lutram,8kBRAM,128kBRAM,regularLB,requiredLB,TotalArea");
+            stats.append("Circuit #,lutram,8kBRAM,128kBRAM,regularLB,requiredLB,TotalArea").append(newLine);
+            for (int i = 0; i < circuits.length; i++) {
+                ResourceOrganizer resource = circuits[i].resource;
+                stats.append(circuits[i].id).append(',')
+                .append(resource.getRAMCount(typeSet.get(0))).append(',')
+                .append(resource.getRAMCount(typeSet.get(1))).append(',')
+                .append(resource.getRAMCount(typeSet.get(2))).append(',')
+                .append(ceilDiv(resource.getLUTRegular(), MemoryCAD.LOGICBLOCKLUT)).append(',')
+                .append(ceilDiv(resource.getLUTRequired(), MemoryCAD.LOGICBLOCKLUT)).append(',')
+                .append(resource.getTotalArea()).append(newLine);
+            }
+            try (Writer writer = new BufferedWriter(new FileWriter(new File(dir, "stats.csv")))) {
+                writer.write(stats.toString());
+            }
+            // Write the report of the run
+            report.put("threads", threads);
+            report.put("mappingTimeMs", (mappingEnd - mappingStart) / 1e6);
+            report.putRate("circuitsPerSecond", circuitNum, mappingEnd - mappingStart);
+            report.put("geometricMeanArea", accProduct);
             for (int i = 0; i < circuits.length; i++) {
-                line = circuits[i].id + ",";
-                line += circuits[i].resource.ramCount.get(typeSet.get(0)) + ",";
-                line += circuits[i].resource.ramCount.get(typeSet.get(1)) + ",";
-                line += circuits[i].resource.ramCount.get(typeSet.get(2)) + ",";
-                line += ceilDiv(circuits[i].resource.getLUTRegular(), MemoryCAD.LOGICBLOCKLUT) + ",";
-                line += ceilDiv(circuits[i].resource.getLUTRequired(), MemoryCAD.LOGICBLOCKLUT) + ",";
-                line += circuits[i].resource.getTotalArea();
-                writer.println(line);
+                report.list("circuitReports").add(circuitReport(circuits[i], typeSet, mappingTime[i]));
             }
-            writer.close();
+            report.write(new File(dir, RunReport.FILE_NAME));
         }catch (IOException ioe){
             ioe.printStackTrace();
         }
@@ -119,27 +115,68 @@ public class MemoryCAD {
 
 
     /**
-     * Generate the mapping list for this RAM circuit. Each line represents the mapping for a
-     * logical RAM. The list can be used to generate the mapping file.
-     * @return a list of record
+     * Wait for a circuit to be mapped
+     * @param task the mapping task of the circuit
+     * @return the mapped circuit
      */
-    public static List<String> generateRecord(CircuitRAM circuit){
-        List<String> list = new ArrayList<>();
-        for (LogicalRAM ram : circuit.logicRAMList) {       
-            String mode = "";
-            switch(ram.mode){
-                case ROM:               mode = "ROM"; break;
-                case SIMPLEDUALPORT:    mode = "SimpleDualPort"; break;
-                case SINGLEPORT:        mode = "SinglePort"; break;
-                case TRUEDUALPORT:      mode = "TrueDualPort"; break;
-            }
-            list.add(String.format("%d %d %d LW %d LD %d ID %d S %d P %d Type %d Mode %s W %d D %d", 
-            circuit.id, ram.id, ram.additionalLUT, ram.w, ram.d, ram.id, ram.serial, ram.parallel, ram.type.getId(),
-            mode, ram.physicalWidth, ram.physicalDepth ));
+    private static CircuitRAM join(Future<CircuitRAM> task){
+        try {
+            return task.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) throw (RuntimeException) ee.getCause();
+            throw new RuntimeException(ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        }
+    }
+
+    /**
+     * Generate the report entry of a mapped circuit
+     * @param circuit the mapped circuit
+     * @param typeSet the RAM types of the architecture
+     * @param mappingTime time used to map the circuit in nanoseconds
+     * @return the values of the entry
+     */
+    private static Map<String, Object> circuitReport(CircuitRAM circuit, List<RAMType> typeSet, long mappingTime){
+        ResourceOrganizer resource = circuit.resource;
+        Map<String, Object> entry = RunReport.entry();
+        entry.put("id", circuit.id);
+        entry.put("mappingTimeMs", mappingTime / 1e6);
+        entry.put("logicalRAMs", circuit.logicRAMList.size());
+        List<Object> types = new ArrayList<>();
+        int lutRequired = resource.getLUTRequired();
+        for (RAMType type : typeSet) {
+            Map<String, Object> usage = RunReport.entry();
+            int available = lutRequired / type.getLutRatio();
+            int count = resource.getRAMCount(type);
+            usage.put("type", type.getId());
+            usage.put("count", count);
+            usage.put("available", available);
+            usage.put("utilization", available == 0 ? 0. : (double) count / available);
+            types.add(usage);
         }
-        return list;
+        entry.put("types", types);
+        entry.put("basicLUT", resource.basicLUT);
+        entry.put("additionalLUT", resource.additionalLUT);
+        entry.put("marginLUT", resource.tempLUT);
+        entry.put("regularLB", ceilDiv(resource.getLUTRegular(), MemoryCAD.LOGICBLOCKLUT));
+        entry.put("requiredLB", ceilDiv(lutRequired, MemoryCAD.LOGICBLOCKLUT));
+        entry.put("area", resource.getTotalArea());
+        return entry;
     }
 
+    /**
+     * Get the RAM types of the architecture of the memory CAD
+     * @return a new list of the RAM types
+     */
+    public static List<RAMType> getTypeSet(){
+        ArrayList<RAMType> typeSet = new ArrayList<>(3);
+        typeSet.add(new LUTRAM(1, 64 * 10, 10, 20, 2 * MemoryCAD.LOGICBLOCKLUT));
+        typeSet.add(new BRAM(2, 8192, 32, 10 * MemoryCAD.LOGICBLOCKLUT));
+        typeSet.add(new BRAM(3, 1024 * 128, 128, 300 * MemoryCAD.LOGICBLOCKLUT));
+        return typeSet;
+    }
 
     /**
      * Introduced after java 11. Added to support ug machine...
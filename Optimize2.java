@@ -1,58 +1,35 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Optimize2 {
 
     public static void main(String[] args){
         try {
-            File file = new File("logical_rams.txt");
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            // Get total number of circuit
-            String line = reader.readLine();
-            Scanner scanner = new Scanner(line);
-            scanner.next(); // Skip useless word
-            int circuitNum = scanner.nextInt();
-            scanner.close();
-
-            // Generate the record list
-            ArrayList<LogicalRAM>[] ramRecordsList = new ArrayList[circuitNum];
-            for (int i = 0; i < circuitNum; i++) {
-                ramRecordsList[i] = new ArrayList<>();
-            }
-
-            reader.readLine(); // skip second line
-
-            while (reader.ready()) {
-                line = reader.readLine();
-                scanner = new Scanner(line);
-                int circuitId = scanner.nextInt();
-                int ramId = scanner.nextInt();
-                RAMMode mode = RAMMode.parseMode(scanner.next());
-                int depth = scanner.nextInt();
-                int width = scanner.nextInt();
-                scanner.close();
-                ramRecordsList[circuitId].add(new LogicalRAM(ramId, mode, width, depth));
+            int threads = 0;
+            int steps; // steps per octave of the ratio search, 0 for the full sweep
+            List<String> positional = SweepEngine.positionalArgs(args);
+            try {
+                threads = SweepEngine.parseThreads(args);
+                steps = RatioSearch.parseSteps(positional);
+            } catch (NumberFormatException e){
+                System.err.println(threads == 0 ? "The thread count must be a positive integer!" : "The steps per octave must be a positive integer!");
+                return;
             }
-            reader.close();
+            boolean verify = positional.contains("--verify");
 
-            // Get the total logic block count of each circuit
-            int[] logicBlockCount = new int[circuitNum];
-            file = new File("logic_block_count.txt");
-            reader = new BufferedReader(new FileReader(file));
-            reader.readLine(); // skip the first line
-            while (reader.ready()) {
-                line = reader.readLine();
-                String[] lineSegment = line.split("\t");
-                logicBlockCount[Integer.parseInt(lineSegment[0])] = Integer.parseInt(lineSegment[1]);
-            }
-            reader.close();
+            RunReport report = new RunReport("Optimize2");
+            Benchmark benchmark = Benchmark.load();
+            System.out.println(benchmark.getLoadReport());
+            report.putBenchmark(benchmark);
+            List<LogicalRAM>[] ramRecordsList = benchmark.getRAMRecords();
+            int[] logicBlockCount = benchmark.getLogicBlockCount();
 
             // Map file name
             SimpleDateFormat format = new SimpleDateFormat("yy_MM_dd_HH_mm_ss");
@@ -65,42 +42,87 @@ public class Optimize2 {
             dir = new File(dir, timestamp);
             dir.mkdir();
 
-            file = new File(dir, "optimization_result.txt");
+            File file = new File(dir, "optimization_result.txt");
             PrintWriter writer = new PrintWriter(file);
             writer.println("Size, width, ratio, average area");
             // Prepare the LUTRAM instance
             LUTRAM lutram = new LUTRAM(1, 64 * 10, 10, 20, 2 * MemoryCAD.LOGICBLOCKLUT);
             // Start the execution
-            CircuitRAM[] circuits = new CircuitRAM[circuitNum];
+            SweepEngine engine = new SweepEngine(ramRecordsList, logicBlockCount, threads);
+            engine.setCache(SweepEngine.openCache(args, benchmark));
+            RatioSearch search = steps > 0 ? new RatioSearch(engine) : null;
+            long sweepStart = System.nanoTime();
+            // The lines of all the sizes are searched together, so each round has enough points for the workers
+            Map<Integer, List<RatioSearch.Line>> sizeLines = new HashMap<>();
+            List<RatioSearch.Line> allLines = new ArrayList<>();
+            if (search != null) {
+                for (int size = 1; size <=128; size *= 2){
+                    List<RatioSearch.Line> lines = new ArrayList<>();
+                    for (int width = 1; width <= 512; width *= 2){
+                        int bramSize = size, bramWidth = width;
+                        lines.add(new RatioSearch.Line(RatioSearch.ratios(1, 512, steps), ratio -> point(lutram, bramSize, bramWidth, ratio)));
+                    }
+                    sizeLines.put(size, lines);
+                    allLines.addAll(lines);
+                }
+                search.search(allLines);
+            }
+            int totalPoints = 0;
             for (int size = 1; size <=128; size *= 2){
-                int optimal_width = 0, optimal_ratio = 0;
-                double minimumArea = Double.MAX_VALUE;
-                for (int width = 1; width <= 512; width *= 2){
-                    for (int ratio = 1; ratio <= 512; ratio *= 2){
-                        RAMType ramType = new BRAM(2, size * 1024, width, ratio * MemoryCAD.LOGICBLOCKLUT);
-                        ArrayList<RAMType> ramTypes = new ArrayList<>();
-                        ramTypes.add(lutram);
-                        ramTypes.add(ramType);
-                        double accProduct = 1;
-                        long area = 0;
-                        for (int i = 0; i < circuits.length; i++) {
-                            circuits[i] = CircuitRAM.parseCircuit(i, logicBlockCount[i] * 10, ramRecordsList[i], ramTypes);
-                            area = circuits[i].resource.getTotalArea();
-                            accProduct *= Math.pow(area, 1 / (double)circuits.length);
-                        }
-                        if (accProduct < minimumArea){
-                            minimumArea = accProduct;
-                            optimal_width = width;
-                            optimal_ratio = ratio;
+                ArrayList<List<RAMType>> points = new ArrayList<>();
+                double[] scores;
+                Map<String, Object> sweep = RunReport.entry();
+                sweep.put("size", size);
+                if (search != null) {
+                    List<RatioSearch.Line> lines = sizeLines.get(size);
+                    scores = RatioSearch.collect(lines, points);
+                    sweep.put("notUnimodal", RatioSearch.countNotUnimodal(lines));
+                } else {
+                    for (int width = 1; width <= 512; width *= 2){
+                        for (int ratio = 1; ratio <= 512; ratio *= 2){
+                            points.add(point(lutram, size, width, ratio));
                         }
-                        System.out.println(size + ", " + width + ", " + ratio + ", " + accProduct);
                     }
+                    scores = engine.evaluate(points);
                 }
-                writer.println(size + ", " + optimal_width + ", " + optimal_ratio + ", " + minimumArea);
+                // Every point goes to the report, the console only gets the summary
+                List<Object> sweepPoints = new ArrayList<>();
+                for (int p = 0; p < scores.length; p++) {
+                    RAMType ramType = points.get(p).get(1);
+                    Map<String, Object> point = RunReport.entry();
+                    point.put("width", ramType.getMaxWidth());
+                    point.put("ratio", ramType.getLutRatio() / MemoryCAD.LOGICBLOCKLUT);
+                    point.put("area", scores[p]);
+                    sweepPoints.add(point);
+                }
+                totalPoints += scores.length;
+                int best = engine.findBest(scores);
+                RAMType optimal = points.get(best).get(1);
+                writer.println(size + ", " + optimal.getMaxWidth() + ", " + optimal.getLutRatio() / MemoryCAD.LOGICBLOCKLUT + ", " + scores[best]);
+                sweep.put("bestWidth", optimal.getMaxWidth());
+                sweep.put("bestRatio", optimal.getLutRatio() / MemoryCAD.LOGICBLOCKLUT);
+                sweep.put("bestArea", scores[best]);
+                sweep.put("points", sweepPoints);
+                report.list("sweeps").add(sweep);
+                System.out.println("Size " + size + ": " + scores[best]);
             }
+            report.putSweep(engine, totalPoints, System.nanoTime() - sweepStart);
+            if (search != null) search.report(report, allLines, verify);
+            engine.shutdown();
             writer.close();
+            report.write(new File(dir, RunReport.FILE_NAME));
         }catch (IOException ioe){
             ioe.printStackTrace();
         }
     }
+
+    /**
+     * Generate the architecture point of the LUTRAM and a BRAM
+     */
+    private static List<RAMType> point(LUTRAM lutram, int size, int width, int ratio){
+        ArrayList<RAMType> ramTypes = new ArrayList<>();
+        ramTypes.add(lutram);
+        ramTypes.add(new BRAM(2, size * 1024, width, ratio * MemoryCAD.LOGICBLOCKLUT));
+        return ramTypes;
+    }
 }
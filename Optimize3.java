@@ -1,68 +1,59 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Scanner;
+import java.util.List;
+import java.util.Map;
 
 public class Optimize3 {
 
     public static void main(String[] args){
         try {
             int lbRatio = 2;
-            if (args.length >= 1){
-                try{
-                    lbRatio = Integer.parseInt(args[0]);
-                } catch (NumberFormatException e){
-                    System.err.println("The input parameter must be an integer!");
-                    return;
+            int screen = 0, topK = 32; // circuits in the screening sample, 0 for no screening
+            double tolerance = 0.01;
+            boolean verify = false;
+            int threads = 0;
+            List<String> positional = SweepEngine.positionalArgs(args);
+            String option = SweepEngine.THREADS_OPTION; // option being read, for the error message
+            try{
+                threads = SweepEngine.parseThreads(args);
+                boolean lbRatioSet = false;
+                for (int i = 0; i < positional.size(); i++) {
+                    String arg = positional.get(i);
+                    option = arg;
+                    if (arg.equals("--screen")) screen = positive(Integer.parseInt(positional.get(++i)));
+                    else if (arg.equals("--top")) topK = positive(Integer.parseInt(positional.get(++i)));
+                    else if (arg.equals("--tolerance")) {
+                        tolerance = Double.parseDouble(positional.get(++i));
+                        if (!(tolerance >= 0)) throw new NumberFormatException("Negative tolerance");
+                    }
+                    else if (arg.equals("--verify")) verify = true;
+                    else if (arg.startsWith("--")) {
+                        System.err.println("Unknown argument: " + arg);
+                        return;
+                    }
+                    else if (!lbRatioSet) {
+                        option = "n";
+                        lbRatio = positive(Integer.parseInt(arg));
+                        lbRatioSet = true;
+                    }
                 }
+            } catch (NumberFormatException | IndexOutOfBoundsException e){
+                System.err.println(optionError(option));
+                return;
             }
 
-            File file = new File("logical_rams.txt");
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            // Get total number of circuit
-            String line = reader.readLine();
-            Scanner scanner = new Scanner(line);
-            scanner.next(); // Skip useless word
-            int circuitNum = scanner.nextInt();
-            scanner.close();
-
-            // Generate the record list
-            ArrayList<LogicalRAM>[] ramRecordsList = new ArrayList[circuitNum];
-            for (int i = 0; i < circuitNum; i++) {
-                ramRecordsList[i] = new ArrayList<>();
-            }
-
-            reader.readLine(); // skip second line
-
-            while (reader.ready()) {
-                line = reader.readLine();
-                scanner = new Scanner(line);
-                int circuitId = scanner.nextInt();
-                int ramId = scanner.nextInt();
-                RAMMode mode = RAMMode.parseMode(scanner.next());
-                int depth = scanner.nextInt();
-                int width = scanner.nextInt();
-                scanner.close();
-                ramRecordsList[circuitId].add(new LogicalRAM(ramId, mode, width, depth));
-            }
-            reader.close();
-
-            // Get the total logic block count of each circuit
-            int[] logicBlockCount = new int[circuitNum];
-            file = new File("logic_block_count.txt");
-            reader = new BufferedReader(new FileReader(file));
-            reader.readLine(); // skip the first line
-            while (reader.ready()) {
-                line = reader.readLine();
-                String[] lineSegment = line.split("\t");
-                logicBlockCount[Integer.parseInt(lineSegment[0])] = Integer.parseInt(lineSegment[1]);
-            }
-            reader.close();
+            RunReport report = new RunReport("Optimize3");
+            report.put("lbRatio", lbRatio);
+            Benchmark benchmark = Benchmark.load();
+            System.out.println(benchmark.getLoadReport());
+            report.putBenchmark(benchmark);
+            List<LogicalRAM>[] ramRecordsList = benchmark.getRAMRecords();
+            int[] logicBlockCount = benchmark.getLogicBlockCount();
 
             // Map file name
             SimpleDateFormat format = new SimpleDateFormat("yy_MM_dd_HH_mm_ss");
@@ -75,19 +66,24 @@ public class Optimize3 {
             dir = new File(dir, timestamp);
             dir.mkdir();
 
-            file = new File(dir, "optimization_result.txt");
+            File file = new File(dir, "optimization_result.txt");
             PrintWriter writer = new PrintWriter(file);
             writer.println("Size 1, width 1, ratio 1, Size 2, width 2, ratio 2, average area");
             // Prepare the LUTRAM instance
             LUTRAM lutram = new LUTRAM(1, 64 * 10, 10, 20, lbRatio * MemoryCAD.LOGICBLOCKLUT);
             // Start the execution
-            CircuitRAM[] circuits = new CircuitRAM[circuitNum];
+            SweepEngine engine = new SweepEngine(ramRecordsList, logicBlockCount, threads);
+            engine.setCache(SweepEngine.openCache(args, benchmark));
+            AreaBound bound = new AreaBound(ramRecordsList, logicBlockCount);
+            int[] sample = screen > 0 ? engine.stratifiedSample(screen) : null;
+            int totalScreened = 0, winnerScreened = 0, groups = 0;
+            int totalPoints = 0, totalPruned = 0, totalAborted = 0;
+            long abortedMapped = 0;
+            long sweepStart = System.nanoTime();
             for (int sizeSmall = 1; sizeSmall <=64; sizeSmall *= 2){
                 for (int sizeLarge = sizeSmall * 2; sizeLarge <=128; sizeLarge *= 2){
                     System.out.print("Size:" + sizeSmall + ", " + sizeLarge + ": ");
-                    int optimalWidthSmall = 0, optimalRatioSmall = 0;
-                    int optimalWidthLarge = 0, optimalRatioLarge = 0;
-                    double minimumArea = Double.MAX_VALUE;
+                    ArrayList<List<RAMType>> points = new ArrayList<>();
                     for (int widthSmall = 1; widthSmall <= 512; widthSmall *= 2){
                         for (int ratioSmall = 1; ratioSmall <= 32; ratioSmall *= 2){
                             for (int widthLarge = widthSmall; widthLarge <= 512; widthLarge *= 2){
@@ -98,32 +94,101 @@ public class Optimize3 {
                                     ramTypes.add(lutram);
                                     ramTypes.add(ramTypeSmall);
                                     ramTypes.add(ramTypeLarge);
-                                    double accProduct = 1.;
-                                    long area = 0;
-                                    for (int i = 0; i < circuits.length; i++) {
-                                        circuits[i] = CircuitRAM.parseCircuit(i, logicBlockCount[i] * 10, ramRecordsList[i], ramTypes);
-                                        area = circuits[i].resource.getTotalArea();
-                                        accProduct *= Math.pow((double) area, 1 / (double)circuits.length);
-                                    }
-                                    if (accProduct < minimumArea){
-                                        minimumArea = accProduct;
-                                        optimalWidthSmall = widthSmall;
-                                        optimalRatioSmall = ratioSmall;
-                                        optimalWidthLarge = widthLarge;
-                                        optimalRatioLarge = ratioLarge;
-                                    }
+                                    points.add(ramTypes);
                                 }
                             }
                         }
                     }
-                    System.out.println(minimumArea);
-                    writer.println(sizeSmall + ", " + optimalWidthSmall + ", " + optimalRatioSmall + ", " + 
-                    sizeLarge + ", " + optimalWidthLarge + ", " + optimalRatioLarge + ", " + minimumArea);
+                    double[] scores;
+                    if (sample != null) {
+                        scores = engine.evaluateScreened(points, sample, topK, tolerance);
+                        totalScreened += engine.getScreenedCount();
+                        groups++;
+                        if (verify) {
+                            // Check whether the winner of the full sweep survives the screening
+                            double[] screenScores = engine.getScreenScores();
+                            int winner = engine.findBest(engine.evaluatePruned(points, bound));
+                            if (scores[winner] == Double.POSITIVE_INFINITY) winnerScreened++;
+                            int rank = 0;
+                            for (double score : screenScores) {
+                                if (score < screenScores[winner]) rank++;
+                            }
+                            System.out.print("(winner rank " + (rank + 1) + " on sample) ");
+                        }
+                    } else {
+                        scores = engine.evaluatePruned(points, bound);
+                    }
+                    int best = engine.findBest(scores);
+                    RAMType optimalSmall = points.get(best).get(1);
+                    RAMType optimalLarge = points.get(best).get(2);
+                    totalPoints += points.size();
+                    Map<String, Object> group = RunReport.entry();
+                    group.put("sizeSmall", sizeSmall);
+                    group.put("sizeLarge", sizeLarge);
+                    group.put("widthSmall", optimalSmall.getMaxWidth());
+                    group.put("ratioSmall", optimalSmall.getLutRatio() / MemoryCAD.LOGICBLOCKLUT);
+                    group.put("widthLarge", optimalLarge.getMaxWidth());
+                    group.put("ratioLarge", optimalLarge.getLutRatio() / MemoryCAD.LOGICBLOCKLUT);
+                    group.put("area", scores[best]);
+                    group.put("points", points.size());
+                    report.list("sweeps").add(group);
+                    if (sample != null) {
+                        System.out.println(scores[best] + " (screened " + engine.getScreenedCount() + "/" + points.size() + ")");
+                        group.put("screened", engine.getScreenedCount());
+                    } else {
+                        System.out.println(scores[best] + " (pruned " + engine.getPrunedCount() + ", aborted " + engine.getAbortedCount() + "/" + points.size() + ")");
+                        totalPruned += engine.getPrunedCount();
+                        totalAborted += engine.getAbortedCount();
+                        abortedMapped += engine.getAbortedMapped();
+                        group.put("pruned", engine.getPrunedCount());
+                        group.put("aborted", engine.getAbortedCount());
+                    }
+                    writer.println(sizeSmall + ", " + optimalSmall.getMaxWidth() + ", " + optimalSmall.getLutRatio() / MemoryCAD.LOGICBLOCKLUT + ", " + 
+                    sizeLarge + ", " + optimalLarge.getMaxWidth() + ", " + optimalLarge.getLutRatio() / MemoryCAD.LOGICBLOCKLUT + ", " + scores[best]);
+                }
+            }
+            report.putSweep(engine, totalPoints, System.nanoTime() - sweepStart);
+            if (sample != null) {
+                report.put("sample", sample);
+                report.put("screened", totalScreened);
+                System.out.println("Screened out " + totalScreened + " of " + totalPoints + " points on " + sample.length + " circuits " + Arrays.toString(sample));
+                if (verify) System.out.println("Winner screened out in " + winnerScreened + " of " + groups + " sweeps");
+            } else {
+                report.put("pruned", totalPruned);
+                report.put("aborted", totalAborted);
+                report.put("abortedMapped", abortedMapped);
+                System.out.println("Pruned " + totalPruned + " of " + totalPoints + " points");
+                if (totalAborted > 0) {
+                    System.out.printf("Aborted %d points after %.1f of %d circuits on average%n",
+                    totalAborted, (double) abortedMapped / totalAborted, ramRecordsList.length);
                 }
             }
+            engine.shutdown();
             writer.close();
+            report.write(new File(dir, RunReport.FILE_NAME));
         }catch (IOException ioe){
             ioe.printStackTrace();
         }
     }
+
+    /**
+     * Check that the value of an option is positive
+     */
+    private static int positive(int value){
+        if (value < 1) throw new NumberFormatException("Not positive: " + value);
+        return value;
+    }
+
+    /**
+     * Describe what an option expects, for an invalid value
+     */
+    private static String optionError(String option){
+        switch (option) {
+            case SweepEngine.THREADS_OPTION: return "The thread count must be a positive integer!";
+            case "--screen": return "The circuit count of --screen must be a positive integer!";
+            case "--top": return "The point count of --top must be a positive integer!";
+            case "--tolerance": return "The tolerance of --tolerance must be a non-negative number, e.g. 0.01!";
+            default: return "The LUTRAM ratio n must be a positive integer!";
+        }
+    }
 }
\ No newline at end of file
@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+
 public enum RAMMode {
     ROM{
         public double getWidthUtilization(){
@@ -20,6 +22,8 @@ public enum RAMMode {
         }
     };
 
+    private static final RAMMode[] VALUES = values();
+
     public abstract double getWidthUtilization();
 
     /**
@@ -33,4 +37,22 @@ public enum RAMMode {
         }
         return null;
     }
+
+    /**
+     * Parse the mode from the ASCII bytes in {@code [start, end)} of a buffer, ignoring case
+     * @param buf the input buffer
+     * @param start index of the first byte of the token
+     * @param end index after the last byte of the token
+     * @return the corresponding type. {@code null} if parsing failed
+     */
+    public static RAMMode parseMode(ByteBuffer buf, int start, int end){
+        for(RAMMode mode : VALUES){
+            String name = mode.name();
+            if (name.length() != end - start) continue;
+            int i = 0;
+            while (i < name.length() && (buf.get(start + i) & 0xDF) == name.charAt(i)) i++; // upper case of ASCII letter
+            if (i == name.length()) return mode;
+        }
+        return null;
+    }
 }
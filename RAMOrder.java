@@ -0,0 +1,83 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class {@code RAMOrder} keeps the placement order of the logical RAMs of a circuit: the rams
+ * sorted by size (depth x width) in ascending order, and the same sequence split into the true
+ * dual port rams and the others. The order only depends on the circuit, so it is generated once
+ * and shared by every architecture the circuit is mapped with.
+ * <p>
+ * An instance is never modified after it is generated, the placement takes the rams through the
+ * {@link ShapeHistogram.Cursor cursors} of the histograms.
+ */
+public class RAMOrder {
+    protected final ShapeHistogram all;           // every ram
+    protected final ShapeHistogram trueDualPort;  // the true dual port rams
+    protected final ShapeHistogram others;        // the rams which are not true dual port
+
+    /**
+     * Generate the placement order of a circuit
+     * @param rams the LogicalRAM list of the circuit
+     * @return the order
+     */
+    public static RAMOrder of(List<LogicalRAM> rams){
+        int[] sorted = sortBySize(rams);
+        // Split the sequence in one pass, both parts keep the size order
+        int tdpNum = 0;
+        for (int index : sorted) {
+            if (rams.get(index).mode == RAMMode.TRUEDUALPORT) tdpNum++;
+        }
+        int[] tdp = new int[tdpNum];
+        int[] others = new int[sorted.length - tdpNum];
+        int t = 0, o = 0;
+        for (int index : sorted) {
+            if (rams.get(index).mode == RAMMode.TRUEDUALPORT) tdp[t++] = index;
+            else others[o++] = index;
+        }
+        return new RAMOrder(new ShapeHistogram(rams, sorted), new ShapeHistogram(rams, tdp), new ShapeHistogram(rams, others));
+    }
+
+    protected RAMOrder(ShapeHistogram all, ShapeHistogram trueDualPort, ShapeHistogram others){
+        this.all = all;
+        this.trueDualPort = trueDualPort;
+        this.others = others;
+    }
+
+    /**
+     * Sort the rams by size in ascending order, the rams with the same size keep the order of the list.
+     * The size is a {@code long}, so it never overflows.
+     */
+    private static int[] sortBySize(List<LogicalRAM> rams){
+        int n = rams.size();
+        long[] size = new long[n];
+        long maxSize = 0;
+        for (int i = 0; i < n; i++) {
+            LogicalRAM ram = rams.get(i);
+            size[i] = (long) ram.d * ram.w;
+            maxSize = Math.max(maxSize, size[i]);
+        }
+        int[] order = new int[n];
+        if (n == 0) return order;
+        if (maxSize < Long.MAX_VALUE / n) {
+            // The key (size, index) is unique, so a primitive sort gives the stable order
+            long[] key = new long[n];
+            for (int i = 0; i < n; i++) {
+                key[i] = size[i] * n + i;
+            }
+            Arrays.sort(key);
+            for (int p = 0; p < n; p++) {
+                order[p] = (int) (key[p] % n);
+            }
+            return order;
+        }
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (o1, o2) -> Long.compare(size[o1], size[o2])); // stable
+        for (int p = 0; p < n; p++) {
+            order[p] = boxed[p];
+        }
+        return order;
+    }
+}
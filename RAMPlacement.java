@@ -0,0 +1,74 @@
+import java.util.List;
+
+/**
+ * The class {@code RAMPlacement} records how the logical RAMs of a circuit are implemented.
+ * The result of the i-th logical RAM of the circuit is stored at index i of each array, so
+ * the {@link LogicalRAM} specifications are never modified by the mapping.
+ */
+public class RAMPlacement {
+    protected List<LogicalRAM> logicRAMList;
+    protected RAMType[] type;
+    protected int[] serial, parallel;
+    protected int[] physicalWidth, physicalDepth;
+    protected int[] additionalLUT;
+
+    /**
+     * Generate an empty placement for the given logical RAMs
+     * @param logicRAMList the LogicalRAM list of the circuit
+     */
+    public RAMPlacement(List<LogicalRAM> logicRAMList){
+        int n = logicRAMList.size();
+        this.logicRAMList = logicRAMList;
+        this.type = new RAMType[n];
+        this.serial = new int[n];
+        this.parallel = new int[n];
+        this.physicalWidth = new int[n];
+        this.physicalDepth = new int[n];
+        this.additionalLUT = new int[n];
+    }
+
+    /**
+     * Record the implementation of a logical RAM
+     * @param index index of the logical RAM in the circuit
+     * @param type the RAMType in use
+     * @param serial number of physical RAM linked in serial
+     * @param parallel number of physical RAM linked in parallel
+     * @param physicalWidth width of each physical RAM
+     * @param physicalDepth depth of each physical RAM
+     * @param additionalLUT LUT used for the decoder and multiplexer
+     */
+    public void set(int index, RAMType type, int serial, int parallel, int physicalWidth, int physicalDepth, int additionalLUT){
+        this.type[index] = type;
+        this.serial[index] = serial;
+        this.parallel[index] = parallel;
+        this.physicalWidth[index] = physicalWidth;
+        this.physicalDepth[index] = physicalDepth;
+        this.additionalLUT[index] = additionalLUT;
+    }
+
+    /**
+     * Record the implementation of a logical RAM as the same as another one
+     * @param from index of the parsed logical RAM
+     * @param to index of the logical RAM with the same shape
+     */
+    public void copy(int from, int to){
+        set(to, type[from], serial[from], parallel[from], physicalWidth[from], physicalDepth[from], additionalLUT[from]);
+    }
+
+    /**
+     * Get the number of physical RAM used by a logical RAM
+     * @param index index of the logical RAM in the circuit
+     * @return number of physical RAM
+     */
+    public int getBlocks(int index){
+        return serial[index] * parallel[index];
+    }
+
+    /**
+     * Get the number of logical RAM in this placement
+     * @return number of logical RAM
+     */
+    public int size(){
+        return type.length;
+    }
+}
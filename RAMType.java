@@ -1,9 +1,31 @@
 public abstract class RAMType {
 
+    private ShapeTable shapeTable;
+
     public abstract int getSize();
     public abstract int getId();
     public abstract int getMaxWidth();
     public abstract int getMinWidth();
     public abstract int getLutRatio();
     public abstract int getLutImpl();
+
+    /**
+     * Get the area of one tile of this type of RAM. For a LUTRAM, this is the average area of a
+     * logic block when part of the logic blocks can implement LUTRAM.
+     * @return the tile area
+     */
+    public abstract long getTileArea();
+
+    /**
+     * Get the implementation cost table of this type of RAM
+     * @return the shared table of this geometry
+     */
+    public ShapeTable getShapeTable(){
+        ShapeTable table = shapeTable;
+        if (table == null) {
+            table = ShapeTable.of(this);
+            shapeTable = table; // Racy but idempotent
+        }
+        return table;
+    }
 }
@@ -0,0 +1,336 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * The class {@code RatioSearch} finds the best LUT ratio of lines of architecture points, a line being
+ * the points which only differ in the ratio of one RAM type. For a fixed size and width, the area is
+ * almost always valley shaped in the ratio: with a small ratio there are too few BRAM tiles and the
+ * memories go to logic, with a large ratio the tiles are wasted. So each line is searched with a
+ * golden-section search over its ratios instead of trying every ratio.
+ * <p>
+ * The lines are searched in lockstep, each round evaluates the probes of all the lines in one call of
+ * {@link SweepEngine#evaluate(List)}, so every worker of the engine is kept busy. Once the bracket of a
+ * line is down to three ratios, the neighbours of the best ratio are probed as a verification, and the
+ * search moves to a better neighbour if there is one. A line is reported as not unimodal if the search
+ * had to move, or if the scores of its evaluated ratios do not decrease down to the best ratio and
+ * increase after it.
+ */
+public class RatioSearch {
+
+    public static final String SEARCH_OPTION = "--ratio-search";
+    private static final double GOLDEN = (3 - Math.sqrt(5)) / 2; // Fraction of the bracket before the first probe
+
+    protected final SweepEngine engine;
+    protected int evaluations = 0; // points evaluated by the search, without the verification
+    protected int rounds = 0;
+
+    /**
+     * Generate a search evaluating the points with an engine
+     * @param engine the engine used to evaluate the points
+     */
+    public RatioSearch(SweepEngine engine){
+        this.engine = engine;
+    }
+
+    /**
+     * Generate the ratios of a line, {@code stepsPerOctave} steps per octave, rounded to integers
+     * @param minRatio the smallest ratio, a power of two
+     * @param maxRatio the largest ratio
+     * @param stepsPerOctave 1 for the powers of two only
+     * @return the ratios in ascending order, without duplicate
+     */
+    public static int[] ratios(int minRatio, int maxRatio, int stepsPerOctave){
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int k = 0; ; k++) {
+            int ratio = (int) Math.round(Math.pow(2, (double) k / stepsPerOctave));
+            if (ratio > maxRatio) break;
+            if (ratio >= minRatio && (list.isEmpty() || list.get(list.size() - 1) != ratio)) list.add(ratio);
+        }
+        int[] ratios = new int[list.size()];
+        for (int k = 0; k < ratios.length; k++) {
+            ratios[k] = list.get(k);
+        }
+        return ratios;
+    }
+
+    /**
+     * Read the steps per octave of the ratio search from the positional arguments
+     * @param positional the positional arguments
+     * @return the steps per octave, 1 if the option has no value, 0 if the option is not given
+     * @throws NumberFormatException if the value is not a positive integer
+     */
+    public static int parseSteps(List<String> positional){
+        int index = positional.indexOf(SEARCH_OPTION);
+        if (index < 0) return 0;
+        if (index + 1 >= positional.size() || positional.get(index + 1).startsWith("--")) return 1;
+        int steps = Integer.parseInt(positional.get(index + 1));
+        if (steps < 1) throw new NumberFormatException("The steps per octave must be positive");
+        return steps;
+    }
+
+    /**
+     * Search the best ratio of every line
+     * @param lines the lines, searched in lockstep
+     */
+    public void search(List<Line> lines){
+        List<List<RAMType>> points = new ArrayList<>();
+        List<Line> owners = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        while (true) {
+            for (Line line : lines) {
+                for (int index : line.next()) {
+                    points.add(line.point.apply(line.ratios[index]));
+                    owners.add(line);
+                    indices.add(index);
+                }
+            }
+            if (points.isEmpty()) break;
+            evaluate(points, owners, indices);
+            rounds++;
+        }
+    }
+
+    /**
+     * Evaluate every ratio the search skipped, to check the result of the search against a full sweep
+     * @param lines the searched lines
+     * @return number of lines whose best ratio is worse than the best of the full sweep
+     */
+    public int verify(List<Line> lines){
+        List<List<RAMType>> points = new ArrayList<>();
+        List<Line> owners = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        for (Line line : lines) {
+            for (int index = 0; index < line.ratios.length; index++) {
+                if (!Double.isNaN(line.scores[index])) continue;
+                points.add(line.point.apply(line.ratios[index]));
+                owners.add(line);
+                indices.add(index);
+            }
+        }
+        int searched = evaluations;
+        if (!points.isEmpty()) evaluate(points, owners, indices);
+        evaluations = searched;
+        int missed = 0;
+        for (Line line : lines) {
+            for (double score : line.scores) {
+                if (score < line.getBestScore()) {
+                    missed++;
+                    break;
+                }
+            }
+        }
+        return missed;
+    }
+
+    private void evaluate(List<List<RAMType>> points, List<Line> owners, List<Integer> indices){
+        double[] scores = engine.evaluate(points);
+        for (int p = 0; p < scores.length; p++) {
+            owners.get(p).scores[indices.get(p)] = scores[p];
+        }
+        evaluations += scores.length;
+        points.clear();
+        owners.clear();
+        indices.clear();
+    }
+
+    /**
+     * Collect the evaluated points of the lines, in the order of the lines and the ratios, so the first
+     * best point is the same as in a full sweep if the search found it
+     * @param lines the searched lines
+     * @param points the evaluated points are added to this list
+     * @return the score of each added point
+     */
+    public static double[] collect(List<Line> lines, List<List<RAMType>> points){
+        int start = points.size();
+        List<Double> scores = new ArrayList<>();
+        for (Line line : lines) {
+            for (int index = 0; index < line.ratios.length; index++) {
+                if (Double.isNaN(line.scores[index])) continue;
+                points.add(line.point.apply(line.ratios[index]));
+                scores.add(line.scores[index]);
+            }
+        }
+        double[] result = new double[points.size() - start];
+        for (int p = 0; p < result.length; p++) {
+            result[p] = scores.get(p);
+        }
+        return result;
+    }
+
+    /**
+     * Count the lines which are not unimodal
+     * @param lines the searched lines
+     * @return number of lines not unimodal
+     */
+    public static int countNotUnimodal(List<Line> lines){
+        int count = 0;
+        for (Line line : lines) {
+            if (!line.isUnimodal()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Print the summary of the search and put it in a report
+     * @param report the report of the run
+     * @param lines all the searched lines
+     * @param verify if true, the lines are checked against a full sweep with {@link #verify(List)}
+     */
+    public void report(RunReport report, List<Line> lines, boolean verify){
+        int notUnimodal = countNotUnimodal(lines);
+        report.put("ratioSearchPoints", evaluations);
+        report.put("ratioSearchRounds", rounds);
+        report.put("notUnimodal", notUnimodal);
+        System.out.println("Ratio search evaluated " + evaluations + " points in " + rounds + " rounds, "
+        + notUnimodal + " of " + lines.size() + " lines not unimodal");
+        if (verify) {
+            int missed = verify(lines);
+            report.put("missed", missed);
+            System.out.println("Best ratio missed in " + missed + " of " + lines.size() + " lines, "
+            + countNotUnimodal(lines) + " lines not unimodal in the full sweep");
+        }
+    }
+
+    /**
+     * Get the number of points evaluated by this search
+     * @return number of evaluations
+     */
+    public int getEvaluations(){
+        return evaluations;
+    }
+
+    /**
+     * Get the number of evaluation rounds of this search
+     * @return number of rounds
+     */
+    public int getRounds(){
+        return rounds;
+    }
+
+    /**
+     * The points which only differ in the ratio of one type, with the state of their search
+     */
+    public static class Line {
+        protected final int[] ratios;  // in logic blocks, ascending
+        protected final IntFunction<List<RAMType>> point; // point of a ratio
+        protected final double[] scores; // NaN if not evaluated
+        protected int lo, hi;          // bracket of the best ratio
+        protected int inner = -1;      // evaluated probe inside the bracket, -1 if none
+        protected int best = -1;       // -1 until the bracket is down to three ratios
+        protected boolean moved;       // whether the verification found a better neighbour
+        protected boolean done;
+
+        /**
+         * Generate a line
+         * @param ratios the ratios of the line in logic blocks, ascending
+         * @param point the point of a ratio of the line
+         */
+        public Line(int[] ratios, IntFunction<List<RAMType>> point){
+            this.ratios = ratios;
+            this.point = point;
+            this.scores = new double[ratios.length];
+            Arrays.fill(scores, Double.NaN);
+            this.lo = 0;
+            this.hi = ratios.length - 1;
+            this.done = ratios.length == 0;
+        }
+
+        /**
+         * Advance the search with the evaluated ratios
+         * @return the indices of the ratios to evaluate next, empty if the search of this line is done
+         */
+        private List<Integer> next(){
+            List<Integer> wanted = new ArrayList<>(2);
+            while (!done) {
+                if (hi - lo > 2) {
+                    int c = inner >= 0 ? inner : lo + (int) Math.round(GOLDEN * (hi - lo));
+                    int d = lo + hi - c;
+                    if (d == c) d = c + 1;
+                    if (d < c) {
+                        int swap = c;
+                        c = d;
+                        d = swap;
+                    }
+                    want(c, wanted);
+                    want(d, wanted);
+                    if (!wanted.isEmpty()) return wanted;
+                    // The lower ratio is kept on a tie, as in a full sweep
+                    if (scores[c] <= scores[d]) {
+                        hi = d;
+                        inner = c;
+                    } else {
+                        lo = c;
+                        inner = d;
+                    }
+                } else if (best < 0) {
+                    for (int index = lo; index <= hi; index++) {
+                        want(index, wanted);
+                    }
+                    if (!wanted.isEmpty()) return wanted;
+                    best = lo;
+                    for (int index = lo + 1; index <= hi; index++) {
+                        if (scores[index] < scores[best]) best = index;
+                    }
+                } else {
+                    // Verification probe around the best ratio
+                    if (best > 0) want(best - 1, wanted);
+                    if (best < ratios.length - 1) want(best + 1, wanted);
+                    if (!wanted.isEmpty()) return wanted;
+                    int neighbour = best;
+                    if (best > 0 && scores[best - 1] < scores[neighbour]) neighbour = best - 1;
+                    if (best < ratios.length - 1 && scores[best + 1] < scores[neighbour]) neighbour = best + 1;
+                    if (neighbour == best) {
+                        done = true;
+                    } else {
+                        moved = true;
+                        best = neighbour;
+                    }
+                }
+            }
+            return wanted;
+        }
+
+        private void want(int index, List<Integer> wanted){
+            if (Double.isNaN(scores[index])) wanted.add(index);
+        }
+
+        /**
+         * Check whether the area is valley shaped over the evaluated ratios of this line
+         * @return false if the search had to move from its result, or if an evaluated ratio breaks the valley
+         */
+        public boolean isUnimodal(){
+            if (moved) return false;
+            double last = Double.POSITIVE_INFINITY;
+            for (int index = 0; index < best; index++) {
+                if (Double.isNaN(scores[index])) continue;
+                if (scores[index] > last) return false;
+                last = scores[index];
+            }
+            last = Double.POSITIVE_INFINITY;
+            for (int index = ratios.length - 1; index > best; index--) {
+                if (Double.isNaN(scores[index])) continue;
+                if (scores[index] > last) return false;
+                last = scores[index];
+            }
+            return true;
+        }
+
+        /**
+         * Get the best ratio found by the search
+         * @return the ratio in logic blocks
+         */
+        public int getBestRatio(){
+            return ratios[best];
+        }
+
+        /**
+         * Get the score of the best ratio found by the search
+         * @return the geometric mean area
+         */
+        public double getBestScore(){
+            return scores[best];
+        }
+    }
+}
@@ -1,15 +1,28 @@
-import java.util.HashMap;
 import java.util.List;
 
 /**
  * The class {@code ResourceOrganizer} supervise the usage of all resources
  * including basic logic LUT, LUTRAM, and BRAM.
+ * <p>
+ * Each RAMType gets a slot, its index in the type set given to the constructor. The count and
+ * LUT ratio of each type are kept in arrays indexed by the slot, so checking and adding RAMs
+ * does not allocate. The methods taking a RAMType look up its slot, the placement resolves
+ * the slots once and uses the methods taking a slot.
+ * <p>
+ * The total area only depends on the LUT requirement, so it is kept for the last LUT
+ * requirement and only recalculated, with integer arithmetic, when the requirement changes.
  */
 public class ResourceOrganizer {
     protected int basicLUT;
     protected int additionalLUT;
     protected int tempLUT; // Space added for more memory resources
-    protected HashMap<RAMType, Integer> ramCount;
+    protected final RAMType[] types;
+    protected final int[] lutRatio;
+    protected final int[] ramCount;
+    protected final long[] tileArea;    // tile area of each slot, 0 for LUTRAM
+    protected final long logicBlockArea; // average area of a logic block
+    private int areaLUT = -1;           // LUT requirement of the cached area
+    private long area;
 
     /**
      * Generate an instance of {@link ResourceOrganizer} with the basic LUT count
@@ -17,13 +30,55 @@ public class ResourceOrganizer {
      * @apiNote this is the LUT count not logic block count
      */
     public ResourceOrganizer(int basicLUT, List<RAMType> ramTypeSet){
+        this.types = ramTypeSet.toArray(new RAMType[0]);
+        this.lutRatio = new int[types.length];
+        this.ramCount = new int[types.length];
+        this.tileArea = new long[types.length];
+        long logicBlockArea = 35000;
+        for (int slot = 0; slot < types.length; slot++) {
+            lutRatio[slot] = types[slot].getLutRatio();
+            if (types[slot].getLutImpl() == 0) { // not a LUTRAM
+                tileArea[slot] = types[slot].getTileArea();
+            } else {
+                logicBlockArea = types[slot].getTileArea();
+            }
+        }
+        this.logicBlockArea = logicBlockArea;
+        reset(basicLUT);
+    }
+
+    /**
+     * Clear all the resource usage, so that this organizer can be used for another circuit
+     * with the same RAM types
+     * @param basicLUT the LUT count without ram related usage
+     */
+    public void reset(int basicLUT){
         this.basicLUT = basicLUT;
         this.additionalLUT = 0;
-        this.ramCount = new HashMap<>(ramTypeSet.size());
-        // Initialize the ramCount Hash map
-        for(RAMType type : ramTypeSet){
-            this.ramCount.put(type, 0); // Initialize all entry as 0
+        this.tempLUT = 0;
+        for (int slot = 0; slot < ramCount.length; slot++) {
+            ramCount[slot] = 0;
+        }
+    }
+
+    /**
+     * Get the slot of a RAM type
+     * @param type type of the RAM
+     * @return the slot of the type
+     */
+    public int getSlot(RAMType type){
+        for (int slot = 0; slot < types.length; slot++) {
+            if (types[slot] == type) return slot;
         }
+        throw new RuntimeException("RAM type " + type.getId() + " is not managed by this organizer");
+    }
+
+    /**
+     * Get the RAM types of this organizer, in the order of the slots
+     * @return the RAM types
+     */
+    public RAMType[] getTypes(){
+        return types;
     }
 
     /**
@@ -33,7 +88,17 @@ public class ResourceOrganizer {
      * @return if it is ready to add, return true
      */
     public boolean ready(RAMType type, int count){
-        if (ramCount.get(type) + count > getLUTRequired() / type.getLutRatio()){
+        return ready(getSlot(type), count);
+    }
+
+    /**
+     * Check whether the type of RAM in a slot is available to add several corresponding RAM
+     * @param slot slot of the type
+     * @param count number of RAM to be added
+     * @return if it is ready to add, return true
+     */
+    public boolean ready(int slot, int count){
+        if (ramCount[slot] + count > getLUTRequired() / lutRatio[slot]){
             return false;
         }
         return true;
@@ -48,6 +113,125 @@ public class ResourceOrganizer {
         return ready(type, 1);
     }
 
+    /**
+     * Count how many RAMs can be added one after another while this type of RAM stays ready.
+     * Each RAM uses the same number of physical RAM and changes the LUT usage by the same amount,
+     * so the count is solved directly instead of checking {@link #ready(RAMType, int)} for each.
+     * @param type type of the RAM
+     * @param count number of physical RAM used by each RAM
+     * @param lutPerRAM change of LUT usage by each RAM, may be negative
+     * @param limit maximum number of RAM to add
+     * @return number of RAM that can be added, at most {@code limit}
+     */
+    public int readyCount(RAMType type, int count, int lutPerRAM, int limit){
+        return readyCount(getSlot(type), count, lutPerRAM, limit);
+    }
+
+    /**
+     * Count how many RAMs can be added one after another while the type of RAM in a slot stays ready.
+     * Each RAM uses the same number of physical RAM and changes the LUT usage by the same amount,
+     * so the count is solved directly instead of checking {@link #ready(int, int)} for each.
+     * @param slot slot of the type
+     * @param count number of physical RAM used by each RAM
+     * @param lutPerRAM change of LUT usage by each RAM, may be negative
+     * @param limit maximum number of RAM to add
+     * @return number of RAM that can be added, at most {@code limit}
+     */
+    public int readyCount(int slot, int count, int lutPerRAM, int limit){
+        // The j-th RAM is ready if ratio * (ramCount + j * count) <= LUTRequired + (j - 1) * lutPerRAM,
+        // i.e. j * (ratio * count - lutPerRAM) <= LUTRequired - lutPerRAM - ratio * ramCount
+        long step = (long) lutRatio[slot] * count - lutPerRAM;
+        long slack = (long) getLUTRequired() - lutPerRAM - (long) lutRatio[slot] * ramCount[slot];
+        if (step > 0) {
+            return slack < 0 ? 0 : (int) Math.min(limit, slack / step);
+        }
+        return step <= slack ? limit : 0; // The slack never shrinks once the first one is ready
+    }
+
+    /**
+     * Calculate the temporal LUT added when RAMs are added one after another, where a temporal LUT
+     * for one RAM is added ({@code count * ratio}) whenever this type of RAM is not ready.
+     * @param type type of the RAM
+     * @param count number of physical RAM used by each RAM
+     * @param lutPerRAM LUT usage added by each RAM
+     * @param number number of RAM added
+     * @return total temporal LUT added
+     */
+    public long forcedTempLUT(RAMType type, int count, int lutPerRAM, int number){
+        return forcedTempLUT(getSlot(type), count, lutPerRAM, number);
+    }
+
+    /**
+     * Calculate the temporal LUT added when RAMs are added one after another, where a temporal LUT
+     * for one RAM is added ({@code count * ratio}) whenever the type of RAM in the slot is not ready.
+     * @param slot slot of the type
+     * @param count number of physical RAM used by each RAM
+     * @param lutPerRAM LUT usage added by each RAM
+     * @param number number of RAM added
+     * @return total temporal LUT added
+     */
+    public long forcedTempLUT(int slot, int count, int lutPerRAM, int number){
+        long ramLUT = (long) lutRatio[slot] * count; // Temporal LUT added each time
+        long slack = (long) getLUTRequired() - (long) lutRatio[slot] * ((long) ramCount[slot] + count);
+        long step = ramLUT - lutPerRAM; // Decrease of slack by each RAM
+        if (number <= 0) return 0;
+        if (slack < -ramLUT || lutPerRAM < 0) {
+            // A single temporal LUT may not be enough, follow the RAMs one by one
+            long temp = 0;
+            for (int j = 0; j < number; j++) {
+                if (slack < 0) {
+                    slack += ramLUT;
+                    temp += ramLUT;
+                }
+                slack -= step;
+            }
+            return temp;
+        }
+        // One temporal LUT always recovers the slack, so the j-th check needs the total temporal LUT
+        // to cover j * step - slack. The largest need comes from the first or the last RAM.
+        long need = Math.max(0, (number - 1) * step) - slack;
+        if (need <= 0) return 0;
+        return (need + ramLUT - 1) / ramLUT * ramLUT;
+    }
+
+    /**
+     * Calculate the least temporal LUT to be added so that this type of RAM is ready for one more RAM
+     * @param type type of the RAM
+     * @param count number of physical RAM used by the RAM
+     * @return the temporal LUT needed, 0 if the type is already ready
+     */
+    public long neededTempLUT(RAMType type, int count){
+        return neededTempLUT(getSlot(type), count);
+    }
+
+    /**
+     * Calculate the least temporal LUT to be added so that the type of RAM in a slot is ready for one more RAM
+     * @param slot slot of the type
+     * @param count number of physical RAM used by the RAM
+     * @return the temporal LUT needed, 0 if the type is already ready
+     */
+    public long neededTempLUT(int slot, int count){
+        return Math.max(0, (long) lutRatio[slot] * ((long) ramCount[slot] + count) - getLUTRequired());
+    }
+
+    /**
+     * Get the number of physical RAM of a type in use
+     * @param type type of the RAM
+     * @return number of physical RAM
+     */
+    public int getRAMCount(RAMType type){
+        return ramCount[getSlot(type)];
+    }
+
+    /**
+     * Get the number of physical RAM of the type in a slot in use
+     * @param slot slot of the type
+     * @return number of physical RAM
+     */
+    public int getRAMCount(int slot){
+        return ramCount[slot];
+    }
+
     /**
      * Get the total LUT required
      * @return total LUT required
@@ -69,23 +253,18 @@ public class ResourceOrganizer {
      * @return total area
      */
     public long getTotalArea(){
-        long area = 0;
-        RAMType lutram = null;
-        for(RAMType type : ramCount.keySet()){
-            if (type.getLutImpl() == 0) { // not a LUTRAM
-                long singleRamArea = 9000 + 5 * type.getSize() + 90 * (int) Math.ceil(Math.sqrt(type.getSize())) + 600 * 2 * type.getMaxWidth();
-
-                area += ceilDiv(getLUTRequired(), type.getLutRatio()) * singleRamArea;
-            } else {
-                lutram = type;
+        int lutRequired = getLUTRequired();
+        if (lutRequired != areaLUT) {
+            long total = 0;
+            for (int slot = 0; slot < tileArea.length; slot++) {
+                if (tileArea[slot] != 0) {
+                    total += ceilDiv(lutRequired, lutRatio[slot]) * tileArea[slot];
+                }
             }
+            total += (long) ceilDiv(lutRequired, MemoryCAD.LOGICBLOCKLUT) * logicBlockArea;
+            area = total;
+            areaLUT = lutRequired;
         }
-        long lutramArea = 35000;
-        if (lutram != null) { // lutram exist
-            lutramArea = (35000 * lutram.getLutRatio() / MemoryCAD.LOGICBLOCKLUT + 5000) / lutram.getLutRatio() * MemoryCAD.LOGICBLOCKLUT;
-        }
-        // half of the LUT can implement LUT RAM, simply average the area usage
-        area += (long) ceilDiv(getLUTRequired(), MemoryCAD.LOGICBLOCKLUT) * lutramArea;
         return area;
     }
 
@@ -95,7 +274,16 @@ public class ResourceOrganizer {
      * @param count
      */
     public void addRAM(RAMType type, int count){
-        ramCount.replace(type, ramCount.get(type) + count);
+        ramCount[getSlot(type)] += count;
+    }
+
+    /**
+     * Add RAM usage of the type in a slot to the resource organizer
+     * @param slot slot of the type
+     * @param count
+     */
+    public void addRAM(int slot, int count){
+        ramCount[slot] += count;
     }
 
     /**
@@ -121,14 +309,32 @@ public class ResourceOrganizer {
         if(tempLUT == 0) return;
         // Find minimum LUT needed (maximum among needed value)
         int minNeededLUT = 0;
-        for (RAMType type : ramCount.keySet()){
-            int needed = ramCount.get(type) * type.getLutRatio();
+        for (int slot = 0; slot < ramCount.length; slot++){
+            int needed = ramCount[slot] * lutRatio[slot];
             if(needed > minNeededLUT) minNeededLUT = needed;
         }
         tempLUT -= getLUTRequired() - minNeededLUT;
         tempLUT = tempLUT < 0 ? 0 : tempLUT; // The value should not drop less than 0
     }
 
+    /**
+     * Set the usage left by a placement of the same rams into these types, with the temporal LUT
+     * at its lowest value as after {@link #releaseTempLUT()}. A placement into a single type does
+     * not depend on its LUT ratio, so the usage found under one ratio is restored under another.
+     * @param regularLUT the regular LUT usage, see {@link #getLUTRegular()}
+     * @param counts the RAM count of each slot
+     */
+    public void restore(int regularLUT, int[] counts){
+        reset(regularLUT);
+        int minNeededLUT = 0;
+        for (int slot = 0; slot < ramCount.length; slot++){
+            ramCount[slot] = counts[slot];
+            int needed = ramCount[slot] * lutRatio[slot];
+            if(needed > minNeededLUT) minNeededLUT = needed;
+        }
+        tempLUT = Math.max(0, minNeededLUT - regularLUT);
+    }
+
     /**
      * Introduced after java 11. Added to support ug machine...
      * @param x
@@ -147,9 +353,9 @@ public class ResourceOrganizer {
                     "Additional LUT: " + additionalLUT + "\n" +
                     "Margin LUT: " + tempLUT + "\n" +
                     "RAM usage: \n";
-        for (RAMType type : ramCount.keySet()){
-            s += " -" + type.getClass() + "(" + type.getSize() + " bits): " + ramCount.get(type) + "/" + 
-            getLUTRequired() / type.getLutRatio()+ "\n";
+        for (int slot = 0; slot < types.length; slot++){
+            s += " -" + types[slot].getClass() + "(" + types[slot].getSize() + " bits): " + ramCount[slot] + "/" + 
+            getLUTRequired() / lutRatio[slot]+ "\n";
         }
         return s;
     }
@@ -0,0 +1,193 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class {@code RunReport} collects the statistics of a run and writes them once as a JSON file
+ * at the end of the run. The values are kept in insertion order and can be numbers, strings,
+ * booleans, lists and maps.
+ * <p>
+ * Every report has the program name, the total runtime and the peak heap usage. The loading of
+ * the benchmark is added with {@link #putBenchmark(Benchmark)}.
+ */
+public class RunReport {
+
+    public static final String FILE_NAME = "report.json";
+
+    protected final Map<String, Object> root = new LinkedHashMap<>();
+    protected final long startTime;
+
+    /**
+     * Generate an empty report, the runtime is counted from now
+     * @param program name of the program
+     */
+    public RunReport(String program){
+        this.startTime = System.nanoTime();
+        root.put("program", program);
+    }
+
+    /**
+     * Set a value of the report
+     * @param key name of the value
+     * @param value the value
+     * @return this report
+     */
+    public RunReport put(String key, Object value){
+        root.put(key, value);
+        return this;
+    }
+
+    /**
+     * Get a list of the report, a new list is added if there is none
+     * @param key name of the list
+     * @return the list
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> list(String key){
+        return (List<Object>) root.computeIfAbsent(key, k -> new ArrayList<>());
+    }
+
+    /**
+     * Generate a map for the values of an entry in a list
+     * @return a new map with the insertion order
+     */
+    public static Map<String, Object> entry(){
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * Add the loading statistics of the benchmark
+     * @param benchmark the loaded benchmark
+     */
+    public void putBenchmark(Benchmark benchmark){
+        root.put("circuits", benchmark.getCircuitNum());
+        root.put("logicalRAMs", benchmark.getRAMNum());
+        root.put("inputBytes", benchmark.inputBytes);
+        root.put("loadTimeMs", benchmark.loadTime / 1e6);
+        root.put("loadFromSnapshot", benchmark.fromSnapshot);
+    }
+
+    /**
+     * Add the statistics of a sweep
+     * @param engine the engine of the sweep
+     * @param points number of architecture points evaluated
+     * @param nanos time of the sweep in nanoseconds
+     */
+    public void putSweep(SweepEngine engine, long points, long nanos){
+        root.put("threads", engine.getThreads());
+        root.put("sweepTimeMs", nanos / 1e6);
+        root.put("points", points);
+        putRate("pointsPerSecond", points, nanos);
+        root.put("circuitsMapped", engine.getMappedCount());
+        putRate("circuitsMappedPerSecond", engine.getMappedCount(), nanos);
+        root.put("circuitsRestored", engine.getRestoredCount());
+    }
+
+    /**
+     * Add the rate of some work
+     * @param key name of the rate
+     * @param count amount of work done
+     * @param nanos time used in nanoseconds
+     */
+    public void putRate(String key, long count, long nanos){
+        root.put(key, nanos > 0 ? count / (nanos / 1e9) : 0.);
+    }
+
+    /**
+     * Write the report with the runtime and the peak heap usage
+     * @param file the JSON file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        root.put("runtimeMs", (System.nanoTime() - startTime) / 1e6);
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        root.put("peakHeapBytes", peakHeap);
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            writeValue(writer, root, "");
+            writer.write('\n');
+        }
+    }
+
+    private static void writeValue(Writer writer, Object value, String indent) throws IOException {
+        if (value == null) {
+            writer.write("null");
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.isEmpty()) {
+                writer.write("{}");
+                return;
+            }
+            String inner = indent + "  ";
+            writer.write("{\n");
+            boolean first = true;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                if (!first) writer.write(",\n");
+                first = false;
+                writer.write(inner);
+                writeString(writer, String.valueOf(e.getKey()));
+                writer.write(": ");
+                writeValue(writer, e.getValue(), inner);
+            }
+            writer.write("\n" + indent + "}");
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            if (list.isEmpty()) {
+                writer.write("[]");
+                return;
+            }
+            String inner = indent + "  ";
+            writer.write("[\n");
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) writer.write(",\n");
+                writer.write(inner);
+                writeValue(writer, list.get(i), inner);
+            }
+            writer.write("\n" + indent + "]");
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            writer.write('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) writer.write(", ");
+                writer.write(Integer.toString(array[i]));
+            }
+            writer.write(']');
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            writer.write(Double.isFinite(d) ? Double.toString(d) : "null"); // JSON has no infinity
+        } else if (value instanceof Number || value instanceof Boolean) {
+            writer.write(value.toString());
+        } else {
+            writeString(writer, value.toString());
+        }
+    }
+
+    private static void writeString(Writer writer, String s) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                if (c < 0x20) writer.write(String.format("\\u%04x", (int) c));
+                else writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
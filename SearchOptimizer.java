@@ -0,0 +1,333 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The class {@code SearchOptimizer} searches the architecture space with heuristics instead of
+ * trying every point of a grid. An architecture is one LUTRAM (optional) and one or more BRAM
+ * types, each BRAM type being a (size, width, ratio) triple. The ratio is not limited to powers
+ * of two, so the space is much larger than the grid of {@link Optimize3}.
+ * <p>
+ * Every architecture is scored with the geometric mean area of all the circuits, through the
+ * same {@link SweepEngine} as the grid optimizers. Two searches are available:
+ * <ul>
+ * <li>{@code descent}: multi-start coordinate descent, every step evaluates all the neighbours
+ * (one index up or down on one coordinate) at once and moves to the best one;</li>
+ * <li>{@code anneal}: simulated annealing on the log score, with a seeded random generator.</li>
+ * </ul>
+ * Both searches can be stopped by a deadline and report the best architecture found so far.
+ */
+public class SearchOptimizer {
+
+    private static final int[] SIZES = {1, 2, 4, 8, 16, 32, 64, 128}; // in kbits
+    private static final int[] WIDTHS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512};
+    private static final int MAX_RATIO = 4096;
+    private static final double START_TEMPERATURE = 0.05; // in log score
+    private static final double END_TEMPERATURE = 1e-4;
+
+    protected SweepEngine engine;
+    protected int bramNum;
+    protected LUTRAM lutram; // null if no LUTRAM
+    protected int[] ratios;
+    protected boolean hasDeadline = false;
+    protected long deadline; // in System.nanoTime(), only used if hasDeadline
+
+    protected HashMap<String, Double> cache = new HashMap<>();
+    protected int evaluations = 0;
+    protected int[] best;
+    protected double bestScore = Double.POSITIVE_INFINITY;
+
+    /**
+     * Generate an instance of {@link SearchOptimizer}
+     * @param engine the engine used to evaluate the architectures
+     * @param bramNum number of BRAM type in an architecture
+     * @param lbRatio 1 of lbRatio logic blocks can be used as LUTRAM, 0 for no LUTRAM
+     * @param pow2 if true, the ratio only takes the powers of two, as in the grid optimizers
+     */
+    public SearchOptimizer(SweepEngine engine, int bramNum, int lbRatio, boolean pow2){
+        this.engine = engine;
+        this.bramNum = bramNum;
+        this.lutram = lbRatio > 0 ? new LUTRAM(1, 64 * 10, 10, 20, lbRatio * MemoryCAD.LOGICBLOCKLUT) : null;
+        // Powers of two, or quarter octave steps up to MAX_RATIO
+        this.ratios = RatioSearch.ratios(1, MAX_RATIO, pow2 ? 1 : 4);
+    }
+
+    public static void main(String[] args){
+        try {
+            String mode = "descent";
+            long seed = 1;
+            int starts = 8, iterations = 2000, bramNum = 2, lbRatio = 2;
+            boolean pow2 = false;
+            boolean hasDeadline = false;
+            long deadline = 0;
+            int threads = 0;
+            List<String> positional = SweepEngine.positionalArgs(args);
+            try {
+                threads = SweepEngine.parseThreads(args);
+                for (int i = 0; i < positional.size(); i++) {
+                    String arg = positional.get(i);
+                    switch (arg) {
+                        case "descent":
+                        case "anneal":
+                        mode = arg; break;
+                        case "--seed": seed = Long.parseLong(positional.get(++i)); break;
+                        case "--starts": starts = Integer.parseInt(positional.get(++i)); break;
+                        case "--iterations": iterations = Integer.parseInt(positional.get(++i)); break;
+                        case "--brams": bramNum = Integer.parseInt(positional.get(++i)); break;
+                        case "--lutram": lbRatio = Integer.parseInt(positional.get(++i)); break;
+                        case "--pow2": pow2 = true; break;
+                        case "--deadline":
+                        deadline = System.nanoTime() + (long) (Double.parseDouble(positional.get(++i)) * 1e9);
+                        hasDeadline = true;
+                        break;
+                        default:
+                        System.err.println("Unknown argument: " + arg);
+                        return;
+                    }
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e){
+                System.err.println(threads == 0 ? "The thread count must be a positive integer!" : "The option value must be a number!");
+                return;
+            }
+            if (bramNum < 1 || bramNum > SIZES.length) {
+                System.err.println("The number of BRAM types must be between 1 and " + SIZES.length + ", one for each size!");
+                return;
+            }
+
+            RunReport report = new RunReport("SearchOptimizer");
+            Benchmark benchmark = Benchmark.load();
+            System.out.println(benchmark.getLoadReport());
+            report.putBenchmark(benchmark);
+            report.put("mode", mode);
+            report.put("seed", seed);
+
+            // Map file name
+            SimpleDateFormat format = new SimpleDateFormat("yy_MM_dd_HH_mm_ss");
+            String timestamp = format.format(new Date());
+            // Make an output dir with timestamp
+            File dir = new File("output_search");
+            if (!dir.isDirectory()) {
+                dir.mkdir();
+            }
+            dir = new File(dir, timestamp);
+            dir.mkdir();
+
+            SweepEngine engine = new SweepEngine(benchmark.getRAMRecords(), benchmark.getLogicBlockCount(), threads);
+            engine.setCache(SweepEngine.openCache(args, benchmark));
+            SearchOptimizer optimizer = new SearchOptimizer(engine, bramNum, lbRatio, pow2);
+            if (hasDeadline) optimizer.setDeadline(deadline);
+            long startTime = System.nanoTime();
+            Random random = new Random(seed);
+            if (mode.equals("anneal")) {
+                optimizer.anneal(iterations, random);
+            } else {
+                optimizer.descent(starts, random);
+            }
+            long searchTime = System.nanoTime() - startTime;
+            report.putSweep(engine, optimizer.evaluations, searchTime);
+            engine.shutdown();
+            double seconds = searchTime / 1e9;
+
+            String result = optimizer.describe(optimizer.best);
+            System.out.println("Best: " + result + ", average area " + optimizer.bestScore);
+            System.out.printf("%s used %d evaluations in %.1fs%s%n", mode, optimizer.evaluations, seconds,
+            optimizer.isExpired() ? " (deadline reached)" : "");
+
+            PrintWriter writer = new PrintWriter(new File(dir, "search_result.txt"));
+            writer.println("Mode " + mode + ", seed " + seed + ", evaluations " + optimizer.evaluations);
+            writer.println(result + ", " + optimizer.bestScore);
+            writer.close();
+            report.put("best", result);
+            report.put("bestArea", optimizer.bestScore);
+            report.put("deadlineReached", optimizer.isExpired());
+            report.write(new File(dir, RunReport.FILE_NAME));
+        }catch (IOException ioe){
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Multi-start coordinate descent. The first start is the middle of the space, the others are
+     * random. Each step evaluates all the neighbours and moves to the best one, until no
+     * neighbour is better or the deadline is reached.
+     * @param starts number of start points
+     * @param random the random generator of the start points
+     */
+    public void descent(int starts, Random random){
+        for (int s = 0; s < starts && !isExpired(); s++) {
+            int[] current = s == 0 ? middle() : randomPoint(random);
+            double currentScore = score(Arrays.asList(current))[0];
+            while (!isExpired()) {
+                List<int[]> neighbours = new ArrayList<>();
+                for (int d = 0; d < current.length; d++) {
+                    for (int step = -1; step <= 1; step += 2) {
+                        int[] next = current.clone();
+                        next[d] += step;
+                        if (isValid(next)) neighbours.add(next);
+                    }
+                }
+                double[] scores = score(neighbours);
+                int bestNext = -1;
+                for (int k = 0; k < scores.length; k++) {
+                    if (scores[k] < currentScore && (bestNext < 0 || scores[k] < scores[bestNext])) bestNext = k;
+                }
+                if (bestNext < 0) break; // local optimum
+                current = neighbours.get(bestNext);
+                currentScore = scores[bestNext];
+            }
+        }
+    }
+
+    /**
+     * Simulated annealing on the log of the score. A move changes one coordinate by one to three
+     * indices, and a worse point is accepted with probability exp(-delta / temperature). The
+     * temperature decreases geometrically over the iterations.
+     * @param iterations number of moves
+     * @param random the random generator of the moves
+     */
+    public void anneal(int iterations, Random random){
+        int[] current = middle();
+        double currentCost = Math.log(score(Arrays.asList(current))[0]);
+        for (int it = 0; it < iterations && !isExpired(); it++) {
+            double temperature = START_TEMPERATURE * Math.pow(END_TEMPERATURE / START_TEMPERATURE, (double) it / iterations);
+            int[] next = current.clone();
+            int d = random.nextInt(next.length);
+            int step = 1 + (random.nextDouble() < 0.1 ? random.nextInt(3) : 0);
+            next[d] += random.nextBoolean() ? step : -step;
+            if (!isValid(next)) continue;
+            double cost = Math.log(score(Arrays.asList(next))[0]);
+            if (cost <= currentCost || random.nextDouble() < Math.exp((currentCost - cost) / temperature)) {
+                current = next;
+                currentCost = cost;
+            }
+        }
+    }
+
+    /**
+     * Score the architectures, the ones never seen are evaluated together. After the deadline,
+     * the architectures never seen are not evaluated and get an infinite score.
+     * @param xs the architectures, as indices in the value set of each coordinate
+     * @return the geometric mean area of each architecture
+     */
+    protected double[] score(List<int[]> xs){
+        double[] scores = new double[xs.size()];
+        List<List<RAMType>> points = new ArrayList<>();
+        List<Integer> pending = new ArrayList<>();
+        for (int k = 0; k < xs.size(); k++) {
+            Double cached = cache.get(Arrays.toString(xs.get(k)));
+            if (cached != null) {
+                scores[k] = cached;
+            } else if (isExpired()) {
+                scores[k] = Double.POSITIVE_INFINITY;
+            } else {
+                points.add(toRAMTypes(xs.get(k)));
+                pending.add(k);
+            }
+        }
+        if (!points.isEmpty()) {
+            double[] evaluated = engine.evaluate(points);
+            evaluations += evaluated.length;
+            for (int j = 0; j < evaluated.length; j++) {
+                int[] x = xs.get(pending.get(j));
+                scores[pending.get(j)] = evaluated[j];
+                cache.put(Arrays.toString(x), evaluated[j]);
+                if (evaluated[j] < bestScore) {
+                    bestScore = evaluated[j];
+                    best = x.clone();
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Check whether an architecture is in the space. The BRAM types must have increasing size.
+     */
+    protected boolean isValid(int[] x){
+        for (int b = 0; b < bramNum; b++) {
+            if (x[3 * b] < 0 || x[3 * b] >= SIZES.length) return false;
+            if (x[3 * b + 1] < 0 || x[3 * b + 1] >= WIDTHS.length) return false;
+            if (x[3 * b + 2] < 0 || x[3 * b + 2] >= ratios.length) return false;
+            if (b > 0 && x[3 * b] <= x[3 * (b - 1)]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop the searches at a deadline
+     * @param deadline the deadline in System.nanoTime()
+     */
+    public void setDeadline(long deadline){
+        this.deadline = deadline;
+        this.hasDeadline = true;
+    }
+
+    protected boolean isExpired(){
+        return hasDeadline && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Get the RAM type set of an architecture, in the same form as the grid optimizers
+     */
+    protected List<RAMType> toRAMTypes(int[] x){
+        ArrayList<RAMType> ramTypes = new ArrayList<>();
+        if (lutram != null) ramTypes.add(lutram);
+        for (int b = 0; b < bramNum; b++) {
+            ramTypes.add(new BRAM(2 + b, SIZES[x[3 * b]] * 1024, WIDTHS[x[3 * b + 1]], ratios[x[3 * b + 2]] * MemoryCAD.LOGICBLOCKLUT));
+        }
+        return ramTypes;
+    }
+
+    /**
+     * Describe an architecture in the form of "size, width, ratio" of each BRAM type
+     */
+    protected String describe(int[] x){
+        if (x == null) return "none";
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < bramNum; b++) {
+            if (b > 0) sb.append(", ");
+            sb.append(SIZES[x[3 * b]]).append(", ").append(WIDTHS[x[3 * b + 1]]).append(", ").append(ratios[x[3 * b + 2]]);
+        }
+        return sb.toString();
+    }
+
+    private int[] middle(){
+        int[] x = new int[3 * bramNum];
+        for (int b = 0; b < bramNum; b++) {
+            // Spread the sizes so that they are increasing
+            x[3 * b] = (b + 1) * SIZES.length / (bramNum + 1);
+            x[3 * b + 1] = WIDTHS.length / 2;
+            x[3 * b + 2] = ratios.length / 4;
+        }
+        return x;
+    }
+
+    private int[] randomPoint(Random random){
+        int[] x = new int[3 * bramNum];
+        // Draw distinct sizes and give them to the types in increasing order, so the point is always valid
+        int[] sizes = new int[SIZES.length];
+        for (int k = 0; k < sizes.length; k++) {
+            sizes[k] = k;
+        }
+        for (int b = 0; b < bramNum; b++) {
+            int pick = b + random.nextInt(sizes.length - b);
+            int swap = sizes[b];
+            sizes[b] = sizes[pick];
+            sizes[pick] = swap;
+        }
+        Arrays.sort(sizes, 0, bramNum);
+        for (int b = 0; b < bramNum; b++) {
+            x[3 * b] = sizes[b];
+            x[3 * b + 1] = random.nextInt(WIDTHS.length);
+            x[3 * b + 2] = random.nextInt(ratios.length);
+        }
+        return x;
+    }
+}
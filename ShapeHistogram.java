@@ -0,0 +1,148 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The class {@code ShapeHistogram} groups a sorted sequence of logical RAMs into runs of the
+ * same shape, i.e. the same (mode, depth, width). Every RAM of a group is implemented in the
+ * same way by a given RAMType, so a placement engine can assign a whole group, or a part of
+ * it, in one step instead of one RAM at a time.
+ */
+public class ShapeHistogram {
+    protected final int[] order;      // index of the RAMs in the circuit, in the sequence order
+    protected final int[] groupStart; // group g covers order[groupStart[g] .. groupStart[g + 1])
+    protected final int[] groupOf;    // group of each position in order
+
+    /**
+     * Generate the histogram of a sequence of logical RAM
+     * @param rams the LogicalRAM list of the circuit
+     * @param sequence index of the RAMs in the list, in the order of placement
+     * @return the histogram
+     */
+    public static ShapeHistogram of(List<LogicalRAM> rams, Collection<Integer> sequence){
+        int[] order = new int[sequence.size()];
+        int n = 0;
+        for (int index : sequence) {
+            order[n++] = index;
+        }
+        return new ShapeHistogram(rams, order);
+    }
+
+    protected ShapeHistogram(List<LogicalRAM> rams, int[] order){
+        this.order = order;
+        this.groupOf = new int[order.length];
+        int[] start = new int[order.length + 1];
+        int groupNum = 0;
+        for (int p = 0; p < order.length; p++) {
+            if (p == 0 || rams.get(order[p]).shape != rams.get(order[p - 1]).shape) {
+                start[groupNum++] = p;
+            }
+            groupOf[p] = groupNum - 1;
+        }
+        start[groupNum] = order.length;
+        this.groupStart = Arrays.copyOf(start, groupNum + 1);
+    }
+
+    /**
+     * Get the number of RAM in the histogram
+     * @return number of RAM
+     */
+    public int size(){
+        return order.length;
+    }
+
+    /**
+     * Get the number of group in the histogram
+     * @return number of group
+     */
+    public int getGroupNum(){
+        return groupStart.length - 1;
+    }
+
+    /**
+     * Get the number of RAM in a group
+     * @param group index of the group
+     * @return number of RAM
+     */
+    public int getCount(int group){
+        return groupStart[group + 1] - groupStart[group];
+    }
+
+    /**
+     * Get a new cursor over the whole sequence
+     * @return the cursor
+     */
+    public Cursor cursor(){
+        return new Cursor();
+    }
+
+    /**
+     * The class {@code Cursor} takes RAMs from both ends of the sequence, like a deque.
+     * The RAMs not taken yet are at {@code order[head .. tail)}.
+     */
+    public class Cursor {
+        protected int head = 0;
+        protected int tail = order.length;
+
+        public boolean isEmpty(){
+            return head >= tail;
+        }
+
+        /**
+         * Get the RAM at the head, the one with the least size
+         * @return index of the RAM in the circuit
+         */
+        public int first(){
+            return order[head];
+        }
+
+        /**
+         * Get the RAM at the tail, the one with the largest size
+         * @return index of the RAM in the circuit
+         */
+        public int last(){
+            return order[tail - 1];
+        }
+
+        /**
+         * Get the number of RAM with the same shape as the head
+         * @return length of the run at the head
+         */
+        public int firstRun(){
+            return Math.min(groupStart[groupOf[head] + 1], tail) - head;
+        }
+
+        /**
+         * Get the number of RAM with the same shape as the tail
+         * @return length of the run at the tail
+         */
+        public int lastRun(){
+            return tail - Math.max(groupStart[groupOf[tail - 1]], head);
+        }
+
+        /**
+         * Take RAMs from the head
+         * @param count number of RAM to take
+         * @return position in {@link ShapeHistogram#order} of the first RAM taken
+         */
+        public int removeFirst(int count){
+            int from = head;
+            head += count;
+            return from;
+        }
+
+        /**
+         * Take RAMs from the tail
+         * @param count number of RAM to take
+         * @return position in {@link ShapeHistogram#order} of the first RAM taken
+         */
+        public int removeLast(int count){
+            tail -= count;
+            return tail;
+        }
+
+        public int[] getOrder(){
+            return order;
+        }
+    }
+}
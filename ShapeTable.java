@@ -0,0 +1,126 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The class {@code ShapeTable} keeps the implementation cost of every logical RAM shape for
+ * one physical RAM geometry. A shape is a distinct (mode, depth, width) tuple, and each shape
+ * gets a dense id when the first {@link LogicalRAM} with that shape is created.
+ * <p>
+ * The cost only depends on the size, the minimum and maximum width and the LUT usage of the
+ * RAMType, so a table is shared by all the RAMTypes with the same geometry, e.g. every LUT
+ * ratio of a sweep. The table covers the shapes known when it is built, newer shapes are
+ * computed on demand.
+ * <p>
+ * At most {@code MAX_TABLES} tables are kept, the least recently used one is dropped when a new
+ * geometry comes, so a resident process does not keep the table of every geometry it has seen.
+ * A RAMType keeps its table, so a dropped table is only built again for a new RAMType.
+ */
+public class ShapeTable {
+
+    // Shape registry
+    private static final HashMap<Long, Integer> shapeIds = new HashMap<>();
+    private static RAMMode[] shapeMode = new RAMMode[256];
+    private static int[] shapeDepth = new int[256];
+    private static int[] shapeWidth = new int[256];
+    private static int shapeNum = 0;
+
+    private static final int MAX_TABLES = 1024; // about 20 kB each for the benchmark
+    private static final Map<String, ShapeTable> tables = Collections.synchronizedMap(
+    new LinkedHashMap<String, ShapeTable>(64, 0.75f, true) { // in access order
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ShapeTable> eldest){
+            return size() > MAX_TABLES;
+        }
+    });
+
+    protected final int size, minWidth, maxWidth, lutImpl;
+    protected final int[] physicalWidth;
+    protected final int[] serial, parallel;
+    protected final int[] blocks;
+    protected final int[] additionalLUT;
+
+    private ShapeTable(RAMType type){
+        this.size = type.getSize();
+        this.minWidth = type.getMinWidth();
+        this.maxWidth = type.getMaxWidth();
+        this.lutImpl = type.getLutImpl();
+        RAMMode[] modes;
+        int[] depths, widths;
+        int n;
+        synchronized (ShapeTable.class) {
+            n = shapeNum;
+            modes = shapeMode;
+            depths = shapeDepth;
+            widths = shapeWidth;
+        }
+        this.physicalWidth = new int[n];
+        this.serial = new int[n];
+        this.parallel = new int[n];
+        this.blocks = new int[n];
+        this.additionalLUT = new int[n];
+        for (int s = 0; s < n; s++) {
+            int pw = LogicalRAM.selectWidth(modes[s], depths[s], size, minWidth, maxWidth);
+            physicalWidth[s] = pw;
+            parallel[s] = LogicalRAM.ceilDiv(widths[s], pw);
+            serial[s] = LogicalRAM.ceilDiv(depths[s], size / pw);
+            blocks[s] = serial[s] * parallel[s];
+            additionalLUT[s] = LogicalRAM.additionalLUT(modes[s], serial[s], parallel[s], lutImpl);
+        }
+    }
+
+    /**
+     * Get the id of a shape, a new id is assigned if this shape is never seen
+     * @param mode mode of the RAM
+     * @param depth depth of the RAM
+     * @param width width of the RAM
+     * @return the shape id
+     */
+    public static synchronized int intern(RAMMode mode, int depth, int width){
+        Long key = ((long) depth << 32 | (width & 0xFFFFFFFFL)) * 4 + mode.ordinal();
+        Integer id = shapeIds.get(key);
+        if (id != null) return id;
+        if (shapeNum == shapeMode.length) {
+            // Grow by copy, tables built before keep the old arrays
+            shapeMode = Arrays.copyOf(shapeMode, shapeNum * 2);
+            shapeDepth = Arrays.copyOf(shapeDepth, shapeNum * 2);
+            shapeWidth = Arrays.copyOf(shapeWidth, shapeNum * 2);
+        }
+        shapeMode[shapeNum] = mode;
+        shapeDepth[shapeNum] = depth;
+        shapeWidth[shapeNum] = width;
+        shapeIds.put(key, shapeNum);
+        return shapeNum++;
+    }
+
+    /**
+     * Get the table of the physical RAM geometry of a RAMType
+     * @param type the RAMType
+     * @return the shared table
+     */
+    public static ShapeTable of(RAMType type){
+        String key = type.getSize() + "/" + type.getMinWidth() + "/" + type.getMaxWidth() + "/" + type.getLutImpl();
+        ShapeTable table = tables.get(key);
+        // Rebuild when shapes were added after the table is built
+        if (table == null || table.blocks.length < shapeCount()) {
+            table = new ShapeTable(type);
+            tables.put(key, table);
+        }
+        return table;
+    }
+
+    /**
+     * Check whether this table has the entry of a shape
+     * @param shape the shape id
+     * @return true if the shape is in the table
+     */
+    public boolean contains(int shape){
+        return shape < blocks.length;
+    }
+
+    private static synchronized int shapeCount(){
+        return shapeNum;
+    }
+}
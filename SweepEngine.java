@@ -0,0 +1,769 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class {@code SweepEngine} evaluates a batch of architecture points against all the
+ * circuits of the benchmark. The work is split into (architecture point x circuit) cells
+ * and executed on a {@link ForkJoinPool}, so idle workers can steal the remaining cells.
+ * The result is the same as evaluating the points one after another.
+ * <p>
+ * An architecture of a single RAM type places every ram into it whatever its LUT ratio, only the
+ * temporal LUT depends on the ratio. So the regular LUT and the RAM count of each circuit are kept
+ * for the geometry of the type, and the other ratios of a sweep restore them instead of mapping
+ * the circuit again (see {@link ResourceOrganizer#restore(int, int[])}). The usage of at most
+ * {@code MAX_LINES} geometries is kept, the least recently used one is dropped first.
+ */
+public class SweepEngine {
+
+    public static final String THREADS_OPTION = "--threads";
+    public static final String CACHE_OPTION = "--cache";
+    private static final int CELL_THRESHOLD = 4; // Cells evaluated by a leaf task
+    private static final int POINT_THRESHOLD = 64; // Points compared by a leaf reduction
+    private static final int PRUNE_BATCH = 16; // Least points evaluated between two pruning steps
+    private static final double ABORT_MARGIN = 1e-9; // Covers the rounding of a sum of log area
+    private static final int MAX_LINES = 1024; // Single type geometries whose usage is kept
+
+    protected List<LogicalRAM>[] ramRecordsList;
+    protected int[] logicBlockCount;
+    protected RAMOrder[] orders; // placement order of each circuit, shared by all the points
+    protected ForkJoinPool pool;
+    protected EvaluationCache cache;
+    protected int prunedCount;
+    protected int abortedCount;
+    protected long abortedMapped;
+    protected int screenedCount;
+    protected double[] screenScores;
+    protected final LongAdder mappedCount = new LongAdder(); // circuits mapped, not read from the cache
+    protected final LongAdder restoredCount = new LongAdder(); // circuits restored from another ratio
+    // Usage of each circuit for a single type geometry, the regular LUT in the high word and the RAM
+    // count in the low word, -1 if the circuit is not mapped yet
+    protected final Map<String, AtomicLongArray> lineUsage = Collections.synchronizedMap(
+    new LinkedHashMap<String, AtomicLongArray>(64, 0.75f, true) { // in access order
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AtomicLongArray> eldest){
+            return size() > MAX_LINES;
+        }
+    });
+
+    /**
+     * Generate an instance of {@link SweepEngine} over the given benchmark
+     * @param ramRecordsList the LogicalRAM list of each circuit
+     * @param logicBlockCount the logic block count of each circuit
+     * @param threads number of worker threads
+     */
+    public SweepEngine(List<LogicalRAM>[] ramRecordsList, int[] logicBlockCount, int threads){
+        this.ramRecordsList = ramRecordsList;
+        this.logicBlockCount = logicBlockCount;
+        this.orders = new RAMOrder[ramRecordsList.length];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = RAMOrder.of(ramRecordsList[i]);
+        }
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Evaluate the geometric mean area of every architecture point
+     * @param points the RAM type set of each architecture point
+     * @return the geometric mean area of each point, in the same order as {@code points}
+     */
+    public double[] evaluate(List<List<RAMType>> points){
+        int[] circuits = new int[ramRecordsList.length];
+        for (int i = 0; i < circuits.length; i++) {
+            circuits[i] = i;
+        }
+        return evaluate(points, circuits);
+    }
+
+    /**
+     * Evaluate the geometric mean area of every architecture point on a subset of the circuits
+     * @param points the RAM type set of each architecture point
+     * @param circuits id of the circuits to be mapped
+     * @return the geometric mean area of each point over the subset, in the same order as {@code points}
+     */
+    public double[] evaluate(List<List<RAMType>> points, int[] circuits){
+        int circuitNum = circuits.length;
+        long[] areas = new long[points.size() * circuitNum];
+        AtomicLongArray[] usage = new AtomicLongArray[points.size()];
+        for (int p = 0; p < usage.length; p++) {
+            usage[p] = getLineUsage(points.get(p));
+        }
+        pool.invoke(new CellTask(points, usage, circuits, areas, 0, areas.length));
+
+        // Reduce in circuit order so that the rounding is identical to the serial loop
+        double[] scores = new double[points.size()];
+        for (int p = 0; p < scores.length; p++) {
+            double accProduct = 1.;
+            for (int i = 0; i < circuitNum; i++) {
+                accProduct *= Math.pow((double) areas[p * circuitNum + i], 1 / (double) circuitNum);
+            }
+            scores[p] = accProduct;
+        }
+        return scores;
+    }
+
+    /**
+     * Map every circuit with one architecture, keeping the area and the RAM count of each type of
+     * every circuit. The circuits are mapped concurrently, and several threads may call this method
+     * at the same time.
+     * @param types the RAM types of the architecture
+     * @param areas the area of each circuit is written in this array
+     * @param ramCount the RAM count of each circuit, in the order of {@code types}, is written in this array
+     * @return the geometric mean area, the same as {@link #evaluate(List)}
+     */
+    public double evaluateDetail(List<RAMType> types, long[] areas, int[][] ramCount){
+        int circuitNum = ramRecordsList.length;
+        pool.invoke(new CircuitTask(types, getLineUsage(types), areas, ramCount, 0, circuitNum));
+        double accProduct = 1.;
+        for (int i = 0; i < circuitNum; i++) {
+            accProduct *= Math.pow((double) areas[i], 1 / (double) circuitNum);
+        }
+        return accProduct;
+    }
+
+    /**
+     * Evaluate the architecture points in two stages. All the points are first scored on a sample
+     * of the circuits, then only the {@code topK} best points of the sample, and the points within
+     * {@code tolerance} of the best sample score, are evaluated on all the circuits.
+     * @param points the RAM type set of each architecture point
+     * @param sample id of the circuits of the first stage, see {@link #stratifiedSample(int)}
+     * @param topK number of best points always kept after the first stage
+     * @param tolerance relative tolerance to the best score of the first stage
+     * @return the geometric mean area of each point, {@link Double#POSITIVE_INFINITY} if screened out
+     */
+    public double[] evaluateScreened(List<List<RAMType>> points, int[] sample, int topK, double tolerance){
+        double[] sampleScores = evaluate(points, sample);
+        Integer[] rank = new Integer[points.size()];
+        for (int p = 0; p < rank.length; p++) {
+            rank[p] = p;
+        }
+        Arrays.sort(rank, (o1, o2) -> Double.compare(sampleScores[o1], sampleScores[o2]));
+        ArrayList<List<RAMType>> kept = new ArrayList<>();
+        ArrayList<Integer> keptIndex = new ArrayList<>();
+        for (int k = 0; k < rank.length; k++) {
+            if (k < topK || sampleScores[rank[k]] <= sampleScores[rank[0]] * (1 + tolerance)) {
+                kept.add(points.get(rank[k]));
+                keptIndex.add(rank[k]);
+            }
+        }
+        double[] keptScores = evaluate(kept);
+        double[] scores = new double[points.size()];
+        Arrays.fill(scores, Double.POSITIVE_INFINITY);
+        for (int k = 0; k < keptScores.length; k++) {
+            scores[keptIndex.get(k)] = keptScores[k];
+        }
+        screenedCount = points.size() - kept.size();
+        screenScores = sampleScores;
+        return scores;
+    }
+
+    /**
+     * Get the number of points screened out by the last call of {@link #evaluateScreened(List, int[], int, double)}
+     * @return number of screened points
+     */
+    public int getScreenedCount(){
+        return screenedCount;
+    }
+
+    /**
+     * Get the first stage scores of the last call of {@link #evaluateScreened(List, int[], int, double)}
+     * @return the score of each point on the sample
+     */
+    public double[] getScreenScores(){
+        return screenScores;
+    }
+
+    /**
+     * Choose a sample of circuits stratified by the RAM count and the logic block count. The
+     * circuits are split into strata of similar RAM count, each stratum is sorted by logic block
+     * count, and the circuits are taken evenly from every stratum.
+     * @param size number of circuits in the sample
+     * @return id of the circuits in the sample, in ascending order
+     */
+    public int[] stratifiedSample(int size){
+        int circuitNum = ramRecordsList.length;
+        if (size >= circuitNum) size = circuitNum;
+        Integer[] byRAM = new Integer[circuitNum];
+        for (int i = 0; i < circuitNum; i++) {
+            byRAM[i] = i;
+        }
+        Arrays.sort(byRAM, (o1, o2) -> ramRecordsList[o1].size() - ramRecordsList[o2].size());
+
+        int strata = Math.max(1, (int) Math.round(Math.sqrt(size)));
+        int[] sample = new int[size];
+        int taken = 0;
+        for (int s = 0; s < strata; s++) {
+            // Stratum s covers byRAM[from, to) and gets its share of the sample
+            int from = s * circuitNum / strata, to = (s + 1) * circuitNum / strata;
+            int share = (s + 1) * size / strata - s * size / strata;
+            Integer[] stratum = Arrays.copyOfRange(byRAM, from, to);
+            Arrays.sort(stratum, (o1, o2) -> logicBlockCount[o1] - logicBlockCount[o2]);
+            for (int k = 0; k < share; k++) {
+                // The middle of k-th of share equal parts
+                sample[taken++] = stratum[(2 * k + 1) * stratum.length / (2 * share)];
+            }
+        }
+        Arrays.sort(sample);
+        return sample;
+    }
+
+    /**
+     * Evaluate the geometric mean area of the architecture points, skipping the points that cannot
+     * be the best one. The points are evaluated in batches in the ascending order of their lower
+     * bound (see {@link AreaBound}), and once the bound of a point exceeds the best score so far,
+     * this point and all the following ones are pruned.
+     * <p>
+     * Within a batch, the circuits of a point are mapped one by one and the sum of the log area is
+     * kept. The point is aborted as soon as this sum plus the log bound of the remaining circuits
+     * exceeds the best point of the former batches. The circuits are mapped in the order in which
+     * the area exceeds its bound the most in the first batch, so a bad point is rejected early.
+     * <p>
+     * A point is only pruned or aborted when it is strictly worse than a score already found, so
+     * {@link #findBest(double[])} returns the same point as with {@link #evaluate(List)}, and the
+     * score of every point evaluated to the end is computed as in {@link #evaluate(List)}.
+     * @param points the RAM type set of each architecture point
+     * @param bound the lower bound of the benchmark
+     * @return the geometric mean area of each point, {@link Double#POSITIVE_INFINITY} if pruned or aborted
+     */
+    public double[] evaluatePruned(List<List<RAMType>> points, AreaBound bound){
+        int circuitNum = ramRecordsList.length;
+        double[] scores = new double[points.size()];
+        double[] logBound = new double[points.size() * circuitNum];
+        pool.invoke(new BoundTask(points, bound, scores, logBound, 0, scores.length));
+        Integer[] order = new Integer[scores.length];
+        for (int p = 0; p < order.length; p++) {
+            order[p] = p;
+        }
+        Arrays.sort(order, (o1, o2) -> Double.compare(scores[o1], scores[o2])); // stable, ties keep index order
+
+        int batch = Math.max(PRUNE_BATCH, 4 * pool.getParallelism());
+        double bestScore = Double.POSITIVE_INFINITY;
+        double bestLog = Double.POSITIVE_INFINITY; // sum of the log area of the best point
+        int[] circuitOrder = null;
+        prunedCount = 0;
+        abortedCount = 0;
+        abortedMapped = 0;
+        int next = 0;
+        while (next < order.length && scores[order[next]] <= bestScore) {
+            int end = next;
+            while (end < order.length && end - next < batch && scores[order[end]] <= bestScore) {
+                end++;
+            }
+            int[] batchPoints = new int[end - next];
+            for (int k = 0; k < batchPoints.length; k++) {
+                batchPoints[k] = order[next + k];
+            }
+            long[] areas = new long[batchPoints.length * circuitNum];
+            int[] mapped = new int[batchPoints.length];
+            pool.invoke(new PointTask(points, batchPoints, logBound, circuitOrder, bestLog, areas, mapped, 0, batchPoints.length));
+            for (int k = 0; k < batchPoints.length; k++) {
+                if (mapped[k] < circuitNum) {
+                    scores[batchPoints[k]] = Double.POSITIVE_INFINITY;
+                    abortedCount++;
+                    abortedMapped += mapped[k];
+                    continue;
+                }
+                // Same rounding as evaluate()
+                double accProduct = 1.;
+                KahanSum logSum = new KahanSum();
+                for (int i = 0; i < circuitNum; i++) {
+                    accProduct *= Math.pow((double) areas[k * circuitNum + i], 1 / (double) circuitNum);
+                    logSum.add(Math.log(areas[k * circuitNum + i]));
+                }
+                scores[batchPoints[k]] = accProduct;
+                bestScore = Math.min(bestScore, accProduct);
+                bestLog = Math.min(bestLog, logSum.get());
+            }
+            if (circuitOrder == null) {
+                circuitOrder = discriminatingOrder(batchPoints, areas, logBound);
+            }
+            next = end;
+        }
+        for (int k = next; k < order.length; k++) {
+            scores[order[k]] = Double.POSITIVE_INFINITY;
+        }
+        prunedCount = order.length - next;
+        return scores;
+    }
+
+    /**
+     * Get the number of points pruned by the last call of {@link #evaluatePruned(List, AreaBound)}
+     * @return number of pruned points
+     */
+    public int getPrunedCount(){
+        return prunedCount;
+    }
+
+    /**
+     * Get the number of points aborted by the last call of {@link #evaluatePruned(List, AreaBound)}
+     * @return number of aborted points
+     */
+    public int getAbortedCount(){
+        return abortedCount;
+    }
+
+    /**
+     * Get the number of circuits mapped for the aborted points by the last call of
+     * {@link #evaluatePruned(List, AreaBound)}
+     * @return number of circuits mapped
+     */
+    public long getAbortedMapped(){
+        return abortedMapped;
+    }
+
+    /**
+     * Get the number of circuits mapped by this engine since it was generated, the areas read
+     * from the cache are not counted
+     * @return number of circuits mapped
+     */
+    public long getMappedCount(){
+        return mappedCount.sum();
+    }
+
+    /**
+     * Get the number of circuits whose usage is restored from a mapping under another LUT ratio
+     * instead of being mapped, since this engine was generated
+     * @return number of circuits restored
+     */
+    public long getRestoredCount(){
+        return restoredCount.sum();
+    }
+
+    /**
+     * Get the number of worker threads of this engine
+     * @return number of threads
+     */
+    public int getThreads(){
+        return pool.getParallelism();
+    }
+
+    /**
+     * Order the circuits by the gap between the log area and the log bound, summed over the points
+     * fully evaluated in a batch, from the largest gap
+     */
+    private int[] discriminatingOrder(int[] batchPoints, long[] areas, double[] logBound){
+        int circuitNum = ramRecordsList.length;
+        double[] gap = new double[circuitNum];
+        for (int k = 0; k < batchPoints.length; k++) {
+            for (int i = 0; i < circuitNum; i++) {
+                if (areas[k * circuitNum + i] == 0) continue; // not mapped
+                gap[i] += Math.log(areas[k * circuitNum + i]) - logBound[batchPoints[k] * circuitNum + i];
+            }
+        }
+        Integer[] order = new Integer[circuitNum];
+        for (int i = 0; i < circuitNum; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (o1, o2) -> Double.compare(gap[o2], gap[o1]));
+        int[] circuitOrder = new int[circuitNum];
+        for (int i = 0; i < circuitNum; i++) {
+            circuitOrder[i] = order[i];
+        }
+        return circuitOrder;
+    }
+
+    /**
+     * Find the point with the minimum score. When several points share the minimum, the
+     * first one is taken, which is the point a serial sweep would keep.
+     * @param scores the score of each point
+     * @return index of the best point, -1 if no score is given
+     */
+    public int findBest(double[] scores){
+        if (scores.length == 0) return -1;
+        return pool.invoke(new BestTask(scores, 0, scores.length));
+    }
+
+    /**
+     * Shut down the worker threads of this engine
+     */
+    public void shutdown(){
+        pool.shutdown();
+        if (cache != null) {
+            System.out.println(cache.getReport());
+            try {
+                cache.close();
+            } catch (IOException ioe) {
+                System.err.println("Cannot write the evaluation cache: " + ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Use a persistent cache of the mapping results, so that only the (circuit, architecture)
+     * pairs never seen are mapped. The cache is closed when the engine is shut down.
+     * @param cache the cache, null for no cache
+     */
+    public void setCache(EvaluationCache cache){
+        this.cache = cache;
+    }
+
+    /**
+     * Open the cache given by the {@code --cache} option
+     * @param args command line arguments
+     * @param benchmark the benchmark to be evaluated
+     * @return the cache, null if the option is not given
+     * @throws IOException if the cache cannot be opened
+     */
+    public static EvaluationCache openCache(String[] args, Benchmark benchmark) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            if (CACHE_OPTION.equals(args[i])) {
+                String path = i + 1 < args.length && !args[i + 1].startsWith("--") ? args[i + 1] : EvaluationCache.DEFAULT_FILE;
+                return EvaluationCache.open(new File(path), benchmark.getChecksum(), EvaluationCache.DEFAULT_CAPACITY);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Map a circuit with an architecture and get the total area, from the cache if possible
+     * @param i id of the circuit
+     * @param types the RAM types of the architecture
+     * @param resource an organizer of these types, it is reset by this method
+     * @param usage the usage kept for the types, see {@link #getLineUsage(List)}
+     * @return the total area
+     */
+    private long mapCircuit(int i, List<RAMType> types, ResourceOrganizer resource, AtomicLongArray usage){
+        return mapCircuit(i, types, resource, usage, null);
+    }
+
+    /**
+     * Map a circuit with an architecture and get the total area and the RAM count of each type, from the
+     * cache if possible, or restored from another LUT ratio if the architecture has a single type
+     * @param i id of the circuit
+     * @param types the RAM types of the architecture
+     * @param resource an organizer of these types, it is reset by this method
+     * @param usage the usage kept for the types, see {@link #getLineUsage(List)}
+     * @param ramCount the RAM count in the order of {@code types} is written in this array, unless it is
+     * {@code null}
+     * @return the total area
+     */
+    private long mapCircuit(int i, List<RAMType> types, ResourceOrganizer resource, AtomicLongArray usage, int[] ramCount){
+        if (cache != null) {
+            long area = cache.get(i, types);
+            if (area >= 0) {
+                if (ramCount == null) return area;
+                int[] counts = cache.getCounts(i, types);
+                if (counts != null) { // null if the entry is evicted in between
+                    System.arraycopy(counts, 0, ramCount, 0, ramCount.length);
+                    return area;
+                }
+            }
+        }
+        long known = usage != null ? usage.get(i) : -1;
+        if (known >= 0) {
+            resource.restore((int) (known >>> 32), new int[]{(int) known});
+            restoredCount.increment();
+        } else {
+            resource.reset(logicBlockCount[i] * MemoryCAD.LOGICBLOCKLUT);
+            CircuitRAM.parseCircuit(i, ramRecordsList[i], orders[i], resource);
+            mappedCount.increment();
+            if (usage != null) usage.set(i, (long) resource.getLUTRegular() << 32 | resource.getRAMCount(0));
+        }
+        long area = resource.getTotalArea();
+        if (ramCount != null || cache != null) {
+            int[] counts = ramCount != null ? ramCount : new int[types.size()];
+            for (int t = 0; t < counts.length; t++) {
+                counts[t] = resource.getRAMCount(types.get(t));
+            }
+            if (cache != null) cache.put(i, types, area, counts);
+        }
+        return area;
+    }
+
+    /**
+     * Get the usage of the circuits for the geometry of a single RAM type, shared by all its LUT ratios
+     * @param types the RAM types of an architecture
+     * @return the usage of each circuit, {@code null} if there is more than one type
+     */
+    private AtomicLongArray getLineUsage(List<RAMType> types){
+        if (types.size() != 1) return null;
+        RAMType type = types.get(0);
+        String key = type.getClass().getName() + "/" + type.getId() + "/" + type.getSize() + "/" + type.getMinWidth()
+        + "/" + type.getMaxWidth() + "/" + type.getLutImpl() + "/" + type.getTileArea();
+        synchronized (lineUsage) {
+            AtomicLongArray usage = lineUsage.get(key);
+            if (usage == null) {
+                long[] unknown = new long[ramRecordsList.length];
+                Arrays.fill(unknown, -1);
+                usage = new AtomicLongArray(unknown);
+                lineUsage.put(key, usage);
+            }
+            return usage;
+        }
+    }
+
+    /**
+     * Read the value of the {@code --threads} option
+     * @param args command line arguments
+     * @return the number of threads, all available processors if not specified
+     * @throws NumberFormatException if the value is missing or not a positive integer
+     */
+    public static int parseThreads(String[] args){
+        for (int i = 0; i < args.length; i++) {
+            if (THREADS_OPTION.equals(args[i])) {
+                int threads = i + 1 < args.length ? Integer.parseInt(args[i + 1]) : 0;
+                if (threads < 1) throw new NumberFormatException("Thread count must be positive");
+                return threads;
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Remove the options handled by {@link SweepEngine} from the command line arguments
+     * @param args command line arguments
+     * @return the remaining positional arguments
+     */
+    public static List<String> positionalArgs(String[] args){
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (THREADS_OPTION.equals(args[i])) {
+                i++; // skip the value
+                continue;
+            }
+            if (CACHE_OPTION.equals(args[i])) {
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) i++; // skip the file
+                continue;
+            }
+            list.add(args[i]);
+        }
+        return list;
+    }
+
+    /**
+     * Map a range of (point x circuit) cells, cell {@code k} is circuit {@code circuits[k % circuitNum]}
+     * of point {@code k / circuitNum}
+     */
+    private class CellTask extends RecursiveAction {
+        private final List<List<RAMType>> points;
+        private final AtomicLongArray[] usage; // usage kept for each point
+        private final int[] circuits;
+        private final long[] areas;
+        private final int lo, hi;
+
+        CellTask(List<List<RAMType>> points, AtomicLongArray[] usage, int[] circuits, long[] areas, int lo, int hi){
+            this.points = points;
+            this.usage = usage;
+            this.circuits = circuits;
+            this.areas = areas;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= CELL_THRESHOLD) {
+                int circuitNum = circuits.length;
+                ResourceOrganizer resource = null;
+                int point = -1;
+                for (int k = lo; k < hi; k++) {
+                    int i = circuits[k % circuitNum];
+                    // Reuse the organizer for the circuits of the same point
+                    if (k / circuitNum != point) {
+                        point = k / circuitNum;
+                        resource = new ResourceOrganizer(0, points.get(point));
+                    }
+                    areas[k] = mapCircuit(i, points.get(point), resource, usage[point]);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new CellTask(points, usage, circuits, areas, lo, mid), new CellTask(points, usage, circuits, areas, mid, hi));
+        }
+    }
+
+    /**
+     * Map a range of circuits with one architecture and record their RAM count
+     */
+    private class CircuitTask extends RecursiveAction {
+        private final List<RAMType> types;
+        private final AtomicLongArray usage; // usage kept for the types
+        private final long[] areas;
+        private final int[][] ramCount;
+        private final int lo, hi;
+
+        CircuitTask(List<RAMType> types, AtomicLongArray usage, long[] areas, int[][] ramCount, int lo, int hi){
+            this.types = types;
+            this.usage = usage;
+            this.areas = areas;
+            this.ramCount = ramCount;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= CELL_THRESHOLD) {
+                ResourceOrganizer resource = new ResourceOrganizer(0, types);
+                for (int i = lo; i < hi; i++) {
+                    areas[i] = mapCircuit(i, types, resource, usage, ramCount[i]);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new CircuitTask(types, usage, areas, ramCount, lo, mid), new CircuitTask(types, usage, areas, ramCount, mid, hi));
+        }
+    }
+
+    /**
+     * Calculate the lower bound of the geometric mean area of a range of points. The mean is
+     * taken in circuit order as in {@link #evaluate(List)}, and every step is monotonic, so the
+     * bound never exceeds the score of the point.
+     */
+    private class BoundTask extends RecursiveAction {
+        private final List<List<RAMType>> points;
+        private final AreaBound bound;
+        private final double[] scores;
+        private final double[] logBound;
+        private final int lo, hi;
+
+        BoundTask(List<List<RAMType>> points, AreaBound bound, double[] scores, double[] logBound, int lo, int hi){
+            this.points = points;
+            this.bound = bound;
+            this.scores = scores;
+            this.logBound = logBound;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= CELL_THRESHOLD) {
+                int circuitNum = ramRecordsList.length;
+                for (int p = lo; p < hi; p++) {
+                    ResourceOrganizer resource = new ResourceOrganizer(0, points.get(p));
+                    double accProduct = 1.;
+                    for (int i = 0; i < circuitNum; i++) {
+                        long area = bound.getAreaBound(i, resource);
+                        accProduct *= Math.pow((double) area, 1 / (double) circuitNum);
+                        logBound[p * circuitNum + i] = Math.log(area);
+                    }
+                    scores[p] = accProduct;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new BoundTask(points, bound, scores, logBound, lo, mid), new BoundTask(points, bound, scores, logBound, mid, hi));
+        }
+    }
+
+    /**
+     * Map the circuits of a range of points in a batch one by one, and stop a point once it cannot
+     * beat the best log area sum. The number of circuits mapped for each point is recorded, a point
+     * is fully evaluated if all the circuits are mapped.
+     */
+    private class PointTask extends RecursiveAction {
+        private final List<List<RAMType>> points;
+        private final int[] batchPoints;
+        private final double[] logBound;
+        private final int[] circuitOrder; // null for the natural order
+        private final double bestLog;
+        private final long[] areas;
+        private final int[] mapped;
+        private final int lo, hi;
+
+        PointTask(List<List<RAMType>> points, int[] batchPoints, double[] logBound, int[] circuitOrder, double bestLog,
+        long[] areas, int[] mapped, int lo, int hi){
+            this.points = points;
+            this.batchPoints = batchPoints;
+            this.logBound = logBound;
+            this.circuitOrder = circuitOrder;
+            this.bestLog = bestLog;
+            this.areas = areas;
+            this.mapped = mapped;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new PointTask(points, batchPoints, logBound, circuitOrder, bestLog, areas, mapped, lo, mid),
+                new PointTask(points, batchPoints, logBound, circuitOrder, bestLog, areas, mapped, mid, hi));
+                return;
+            }
+            int circuitNum = ramRecordsList.length;
+            int p = batchPoints[lo];
+            // remaining[j] is the log bound of the circuits from the j-th one in the order
+            double[] remaining = new double[circuitNum + 1];
+            for (int j = circuitNum - 1; j >= 0; j--) {
+                int i = circuitOrder == null ? j : circuitOrder[j];
+                remaining[j] = remaining[j + 1] + logBound[p * circuitNum + i];
+            }
+            ResourceOrganizer resource = new ResourceOrganizer(0, points.get(p));
+            AtomicLongArray usage = getLineUsage(points.get(p));
+            KahanSum logSum = new KahanSum();
+            int j = 0;
+            while (j < circuitNum) {
+                int i = circuitOrder == null ? j : circuitOrder[j];
+                long area = mapCircuit(i, points.get(p), resource, usage);
+                areas[lo * circuitNum + i] = area;
+                logSum.add(Math.log(area));
+                j++;
+                if (logSum.get() + remaining[j] > bestLog + ABORT_MARGIN) break;
+            }
+            mapped[lo] = j;
+        }
+    }
+
+    /**
+     * Compensated (Kahan) summation of doubles
+     */
+    private static class KahanSum {
+        private double sum;
+        private double compensation;
+
+        void add(double value){
+            double y = value - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+        }
+
+        double get(){
+            return sum;
+        }
+    }
+
+    /**
+     * Find the index of the minimum score in a range, the lower index wins a tie
+     */
+    private static class BestTask extends RecursiveTask<Integer> {
+        private final double[] scores;
+        private final int lo, hi;
+
+        BestTask(double[] scores, int lo, int hi){
+            this.scores = scores;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (hi - lo <= POINT_THRESHOLD) {
+                int best = lo;
+                for (int p = lo + 1; p < hi; p++) {
+                    if (scores[p] < scores[best]) best = p;
+                }
+                return best;
+            }
+            int mid = (lo + hi) >>> 1;
+            BestTask left = new BestTask(scores, lo, mid);
+            left.fork();
+            int right = new BestTask(scores, mid, hi).compute();
+            int leftBest = left.join();
+            return scores[right] < scores[leftBest] ? right : leftBest;
+        }
+    }
+}
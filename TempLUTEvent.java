@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event of a temporal LUT increase while mapping a circuit. The event is disabled by
+ * default, see memorycad.jfc to record it.
+ */
+@Name("memorycad.TempLUT")
+@Label("Temporal LUT Increase")
+@Category("MemoryCAD")
+@Description("Temporal LUT added so that more rams can be placed")
+@Enabled(false)
+@StackTrace(false)
+public class TempLUTEvent extends jdk.jfr.Event {
+
+    @Label("Circuit")
+    public int circuit;
+
+    @Label("Phase")
+    @Description("forced, true dual port or fallback")
+    public String phase;
+
+    @Label("Amount")
+    public int amount;
+
+    @Label("Temporal LUT")
+    @Description("Temporal LUT after the increase")
+    public int tempLUT;
+}
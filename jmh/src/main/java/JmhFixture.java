@@ -0,0 +1,157 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import memorycad.bench.Fixture;
+
+/**
+ * The workloads of the benchmarks over the input files of the memory CAD, see {@link Fixture}
+ */
+public class JmhFixture implements Fixture {
+
+    private File ramFile, logicBlockFile;
+    private File snapshotDir; // copy of the inputs with a valid snapshot
+    private List<LogicalRAM>[] ramRecordsList;
+    private int[] logicBlockCount;
+    private List<RAMType> architecture; // of MemoryCAD
+    private List<RAMType> typeSet;
+    private RAMType largest;
+    private ResourceOrganizer resource;
+    private int delta = 1;
+
+    @Override
+    public void setup(int typeCount){
+        try {
+            File dir = new File(System.getProperty("memorycad.dir", "."));
+            ramFile = new File(dir, Benchmark.RAM_FILE);
+            logicBlockFile = new File(dir, Benchmark.LOGIC_BLOCK_FILE);
+            Benchmark benchmark = Benchmark.load(ramFile, logicBlockFile, false);
+            ramRecordsList = benchmark.getRAMRecords();
+            logicBlockCount = benchmark.getLogicBlockCount();
+
+            snapshotDir = Files.createTempDirectory("memorycad-jmh").toFile();
+            snapshotDir.deleteOnExit();
+            Files.copy(ramFile.toPath(), new File(snapshotDir, Benchmark.RAM_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(logicBlockFile.toPath(), new File(snapshotDir, Benchmark.LOGIC_BLOCK_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            new File(snapshotDir, Benchmark.RAM_FILE).deleteOnExit();
+            new File(snapshotDir, Benchmark.LOGIC_BLOCK_FILE).deleteOnExit();
+            BenchmarkSnapshot.getFile(new File(snapshotDir, Benchmark.RAM_FILE)).deleteOnExit();
+            loadSnapshot(); // write the snapshot
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        architecture = MemoryCAD.getTypeSet();
+        typeSet = new ArrayList<>();
+        switch (typeCount) {
+            case 1: typeSet.add(architecture.get(1)); break;
+            case 2: typeSet.add(architecture.get(0)); typeSet.add(architecture.get(1)); break;
+            case 3: typeSet.addAll(architecture); break;
+            default: throw new IllegalArgumentException("At most three types of RAM is supported");
+        }
+        largest = typeSet.get(typeSet.size() - 1);
+        resource = new ResourceOrganizer(logicBlockCount[0] * MemoryCAD.LOGICBLOCKLUT, typeSet);
+        CircuitRAM.parseCircuit(0, ramRecordsList[0], resource);
+    }
+
+    @Override
+    public Object loadText() throws IOException {
+        return Benchmark.load(ramFile, logicBlockFile, false);
+    }
+
+    @Override
+    public Object loadSnapshot() throws IOException {
+        return Benchmark.load(new File(snapshotDir, Benchmark.RAM_FILE), new File(snapshotDir, Benchmark.LOGIC_BLOCK_FILE), true);
+    }
+
+    @Override
+    public long peekSize(){
+        long total = 0;
+        for (List<LogicalRAM> rams : ramRecordsList) {
+            for (LogicalRAM ram : rams) {
+                for (RAMType type : typeSet) {
+                    total += ram.peekSize(type);
+                }
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public Object parseRAM(){
+        RAMPlacement placement = null;
+        for (List<LogicalRAM> rams : ramRecordsList) {
+            placement = new RAMPlacement(rams);
+            for (int i = 0; i < rams.size(); i++) {
+                rams.get(i).parse(largest, placement, i);
+            }
+        }
+        return placement;
+    }
+
+    @Override
+    public long parseCircuit(){
+        long total = 0;
+        for (int i = 0; i < ramRecordsList.length; i++) {
+            CircuitRAM circuit = CircuitRAM.parseCircuit(i, logicBlockCount[i] * MemoryCAD.LOGICBLOCKLUT, ramRecordsList[i], typeSet);
+            total += circuit.resource.getTotalArea();
+        }
+        return total;
+    }
+
+    @Override
+    public long totalArea(){
+        // Alternate the LUT usage so that the area is not the one of the last call
+        resource.addLUT(delta);
+        delta = -delta;
+        return resource.getTotalArea();
+    }
+
+    @Override
+    public long mapAll(){
+        long total = 0;
+        CountingChannel channel = new CountingChannel();
+        try (MapWriter mapWriter = new MapWriter(channel)) {
+            for (int i = 0; i < ramRecordsList.length; i++) {
+                CircuitRAM circuit = CircuitRAM.parseCircuit(i, logicBlockCount[i] * MemoryCAD.LOGICBLOCKLUT, ramRecordsList[i], architecture);
+                mapWriter.write(circuit);
+                total += circuit.resource.getTotalArea();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return total + channel.bytes;
+    }
+
+    /**
+     * A channel which drops the bytes written to it and only counts them
+     */
+    private static class CountingChannel implements WritableByteChannel {
+        private long bytes = 0;
+        private boolean open = true;
+
+        @Override
+        public int write(ByteBuffer src){
+            int n = src.remaining();
+            src.position(src.limit());
+            bytes += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen(){
+            return open;
+        }
+
+        @Override
+        public void close(){
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package memorycad.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CircuitRAM.parseCircuit over all the circuits, for the 1-, 2- and 3-type cases, and
+ * ResourceOrganizer.getTotalArea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircuitRAMBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int typeCount;
+
+    private Fixture fixture;
+
+    @Setup
+    public void setup(){
+        fixture = Fixture.create(typeCount);
+    }
+
+    @Benchmark
+    public long parseCircuit(){
+        return fixture.parseCircuit();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long totalArea(){
+        return fixture.totalArea();
+    }
+}
@@ -0,0 +1,56 @@
+package memorycad.bench;
+
+import java.io.IOException;
+
+/**
+ * The workloads measured by the benchmarks. The classes of the memory CAD are in the default
+ * package, which cannot be used from a named package, while JMH does not accept benchmarks in
+ * the default package. So the workloads are implemented by {@code JmhFixture} in the default
+ * package and called through this interface, which is a plain interface call once loaded.
+ * <p>
+ * The input files are read from the directory given by the {@code memorycad.dir} system
+ * property, the working directory by default.
+ */
+public interface Fixture {
+
+    String IMPLEMENTATION = "JmhFixture";
+
+    /**
+     * Create the fixture with the benchmark loaded
+     * @param typeCount number of RAM types of the architecture: 1 is a BRAM, 2 adds a LUTRAM,
+     * 3 is the architecture of MemoryCAD
+     * @return the fixture
+     */
+    static Fixture create(int typeCount){
+        try {
+            Fixture fixture = (Fixture) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+            fixture.setup(typeCount);
+            return fixture;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + IMPLEMENTATION, e);
+        }
+    }
+
+    void setup(int typeCount);
+
+    /** Load the benchmark by parsing the text files */
+    Object loadText() throws IOException;
+
+    /** Load the benchmark from a valid snapshot */
+    Object loadSnapshot() throws IOException;
+
+    /** Peek the size of every logical RAM with every RAM type */
+    long peekSize();
+
+    /** Implement every logical RAM with the largest RAM type */
+    Object parseRAM();
+
+    /** Map every circuit with CircuitRAM.parseCircuit */
+    long parseCircuit();
+
+    /** Get the total area after a LUT change, so the area is recalculated */
+    long totalArea();
+
+    /** Map every circuit and write the map records through MapWriter, as MemoryCAD does, to a discarding channel */
+    long mapAll();
+}
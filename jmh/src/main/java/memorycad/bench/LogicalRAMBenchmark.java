@@ -0,0 +1,43 @@
+package memorycad.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LogicalRAM.peekSize and LogicalRAM.parse over all the logical RAMs of the benchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogicalRAMBenchmark {
+
+    private Fixture fixture;
+
+    @Setup
+    public void setup(){
+        fixture = Fixture.create(3);
+    }
+
+    @Benchmark
+    public long peekSize(){
+        return fixture.peekSize();
+    }
+
+    @Benchmark
+    public Object parse(){
+        return fixture.parseRAM();
+    }
+}